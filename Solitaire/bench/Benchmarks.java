@@ -0,0 +1,237 @@
+
+/*
+ *	Solitaire - Benchmarks.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.function.LongSupplier;
+
+//the operations measured by the JMH benchmarks (see benchmarks/SolitaireBenchmarks). JMH won't run a
+//benchmark in the default package, and a class in a package can't use the game's classes, so the
+//benchmarks get their operations from here. each one is set up when it is made, and returns something
+//that depends on the work it did, which JMH then consumes
+public class Benchmarks {
+
+	//options for the games being benchmarked, with a small undo limit so the journal doesn't keep growing
+	static GameOptions benchmarkOptions(int seed) {
+		GameOptions opt = new GameOptions();
+		opt.useSeed = true;
+		opt.initialSeed = seed;
+		opt.undoLimit = 64;
+		return opt;
+	}
+
+	//finds a deal that the solver can win quickly, for benchmarks that need a long run of legal moves
+	static int[] findSolution(GameOptions opt) {
+		Solver solver = new Solver(100000, 0);
+		for (int seed = 0; ; ++seed) {
+			opt.initialSeed = seed;
+			if (solver.solve(seed, opt) == Solver.Result.Winnable) {
+				return solver.getSolution();
+			}
+		}
+	}
+
+	//a window sized GUI showing a game part way through, which draws into an image instead of the screen
+	static GUI createGUI() {
+		GameOptions opt = benchmarkOptions(0);
+		int solution[] = findSolution(opt);
+
+		GUI gui = new GUI();
+		gui.setSize(GUI.WINDOW_WIDTH, GUI.WINDOW_HEIGHT);
+		gui.waitForCardImages();
+		gui.game = new Solitaire(opt);
+		for (int i = 0; i < solution.length / 2; ++i) {
+			gui.game.apply(solution[i]);
+		}
+		return gui;
+	}
+
+	//makes the operation for a benchmark, by the name of its state class in SolitaireBenchmarks
+	public static LongSupplier create(String name) {
+		switch (name) {
+		case "DealPileFill":
+			return new LongSupplier() {
+				DealPile pile = new DealPile();
+				int seed = 0;
+
+				@Override
+				public long getAsLong() {
+					pile.clear();
+					pile.fill(seed++);
+					return pile.getTopCode();
+				}
+			};
+
+		case "SolitaireNew":
+			return new LongSupplier() {
+				GameOptions opt = benchmarkOptions(0);
+
+				@Override
+				public long getAsLong() {
+					++opt.initialSeed;
+					return new Solitaire(opt).tableau[6].visiblePile.getTopCode();
+				}
+			};
+
+		case "SolitaireCopy":
+			return new LongSupplier() {
+				Solitaire game = new Solitaire(benchmarkOptions(1));
+
+				@Override
+				public long getAsLong() {
+					return new Solitaire(game).score;
+				}
+			};
+
+		case "PreMove":
+			return new LongSupplier() {
+				Solitaire game = new Solitaire(benchmarkOptions(1));
+
+				@Override
+				public long getAsLong() {
+					game.preMove();
+					game.journal.pop();
+					return game.journal.getSize();
+				}
+			};
+
+		//picks up the cards for a legal move, puts them down, and takes the move back
+		case "HoldReleaseUndo": {
+			MoveList moves = new MoveList();
+			for (int seed = 0; ; ++seed) {
+				final Solitaire game = new Solitaire(benchmarkOptions(seed));
+				game.generateMoves(moves);
+				for (int i = 0; i < moves.size(); ++i) {
+					if (Move.getType(moves.get(i)) == Move.TYPE_CARDS) {
+						final int move = moves.get(i);
+						return new LongSupplier() {
+							@Override
+							public long getAsLong() {
+								game.hold(Move.getFrom(move), Move.getCount(move));
+								game.release(Move.getTo(move));
+								game.undo();
+								return game.score;
+							}
+						};
+					}
+				}
+			}
+		}
+
+		//deals through the whole hand and resets it
+		case "FlipHandCycle":
+			return new LongSupplier() {
+				Solitaire game = new Solitaire(benchmarkOptions(1));
+
+				@Override
+				public long getAsLong() {
+					int count = game.options.draw3 ? 3 : 1;
+					do {
+						game.flipHand(count);
+					} while (game.dealPile.getHeight() != 0);
+					game.flipHand(count);
+					return game.showingPile.getHeight();
+				}
+			};
+
+		//plays a whole winning game, then undoes every move
+		case "ApplyUndoChain": {
+			GameOptions opt = benchmarkOptions(0);
+			final int solution[] = findSolution(opt);
+			opt.undoLimit = 0;
+			final Solitaire game = new Solitaire(opt);
+
+			return new LongSupplier() {
+				@Override
+				public long getAsLong() {
+					for (int move : solution) {
+						game.apply(move);
+					}
+					long score = game.score;
+					while (game.canUndo()) {
+						game.undo();
+					}
+					return score;
+				}
+			};
+		}
+
+		case "GetScore": {
+			final Solitaire game = new Solitaire(benchmarkOptions(1));
+			game.flipHand(3);
+
+			return new LongSupplier() {
+				@Override
+				public long getAsLong() {
+					return game.getScore();
+				}
+			};
+		}
+
+		case "SolverSolve":
+			return new LongSupplier() {
+				Solver solver = new Solver(20000, 0);
+				GameOptions opt = benchmarkOptions(0);
+				int seed = 0;
+
+				@Override
+				public long getAsLong() {
+					solver.solve(seed++ & 1023, opt);
+					return solver.getNodes();
+				}
+			};
+
+		//draws the game into an image the size of the window. nothing is read back from the image, as
+		//that would be part of what is measured, but drawing into it can't be optimised away anyway
+		case "GUIPaint": {
+			final GUI gui = createGUI();
+			final Graphics2D graphics = new BufferedImage(GUI.WINDOW_WIDTH, GUI.WINDOW_HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+
+			return new LongSupplier() {
+				long frames = 0;
+
+				@Override
+				public long getAsLong() {
+					gui.paint(graphics);
+					return ++frames;
+				}
+			};
+		}
+
+		//draws the frames of a drag of the longest run of cards
+		case "GUIPaintDragging": {
+			final GUI gui = createGUI();
+			int longest = 0;
+			for (int t = 1; t < 7; ++t) {
+				if (gui.game.tableau[t].visiblePile.getHeight() > gui.game.tableau[longest].visiblePile.getHeight()) {
+					longest = t;
+				}
+			}
+			gui.game.hold(longest, gui.game.tableau[longest].visiblePile.getHeight());
+			final Graphics2D graphics = new BufferedImage(GUI.WINDOW_WIDTH, GUI.WINDOW_HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+
+			return new LongSupplier() {
+				int frame = 0;
+
+				@Override
+				public long getAsLong() {
+					frame = (frame + 1) & 255;
+					gui.recentMouseX = 100 + frame;
+					gui.recentMouseY = 100 + frame;
+					gui.paint(graphics);
+					return frame;
+				}
+			};
+		}
+
+		default:
+			throw new IllegalArgumentException("no benchmark called " + name);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+
+/*
+ *	Solitaire - SolitaireBenchmarks.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//JMH benchmarks for the game engine and the drawing code, run with "gradle jmh" (see build.gradle), which
+//adds -prof gc so the bytes allocated per operation are reported too
+//
+//each benchmark has its own state class, which gets its operation from Benchmarks in the default package
+//by name. each benchmark runs in its own fork, so the call to the operation only ever sees one class and
+//the JIT inlines it
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SolitaireBenchmarks {
+
+	@State(Scope.Thread)
+	public static abstract class Operation {
+		final String name;
+		LongSupplier operation;
+
+		Operation(String _name) {
+			name = _name;
+		}
+
+		@Setup
+		public void setUp() throws ReflectiveOperationException {
+			operation = (LongSupplier) Class.forName("Benchmarks").getMethod("create", String.class).invoke(null, name);
+		}
+	}
+
+	public static class DealPileFill extends Operation {
+		public DealPileFill() {
+			super("DealPileFill");
+		}
+	}
+
+	public static class SolitaireNew extends Operation {
+		public SolitaireNew() {
+			super("SolitaireNew");
+		}
+	}
+
+	public static class SolitaireCopy extends Operation {
+		public SolitaireCopy() {
+			super("SolitaireCopy");
+		}
+	}
+
+	public static class PreMove extends Operation {
+		public PreMove() {
+			super("PreMove");
+		}
+	}
+
+	public static class HoldReleaseUndo extends Operation {
+		public HoldReleaseUndo() {
+			super("HoldReleaseUndo");
+		}
+	}
+
+	public static class FlipHandCycle extends Operation {
+		public FlipHandCycle() {
+			super("FlipHandCycle");
+		}
+	}
+
+	public static class ApplyUndoChain extends Operation {
+		public ApplyUndoChain() {
+			super("ApplyUndoChain");
+		}
+	}
+
+	public static class GetScore extends Operation {
+		public GetScore() {
+			super("GetScore");
+		}
+	}
+
+	public static class SolverSolve extends Operation {
+		public SolverSolve() {
+			super("SolverSolve");
+		}
+	}
+
+	public static class GUIPaint extends Operation {
+		public GUIPaint() {
+			super("GUIPaint");
+		}
+	}
+
+	public static class GUIPaintDragging extends Operation {
+		public GUIPaintDragging() {
+			super("GUIPaintDragging");
+		}
+	}
+
+	@Benchmark
+	public long dealPileFill(DealPileFill state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long solitaireNew(SolitaireNew state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long solitaireCopy(SolitaireCopy state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long preMove(PreMove state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long holdReleaseUndo(HoldReleaseUndo state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long flipHandCycle(FlipHandCycle state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long applyUndoChain(ApplyUndoChain state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long getScore(GetScore state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long solverSolve(SolverSolve state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long guiPaint(GUIPaint state) {
+		return state.operation.getAsLong();
+	}
+
+	@Benchmark
+	public long guiPaintDragging(GUIPaintDragging state) {
+		return state.operation.getAsLong();
+	}
+}
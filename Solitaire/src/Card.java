@@ -8,6 +8,8 @@
  */
 
 // must not store any objects, as shallow copies are done to card objects
+// there is only ever one Card object per card (see get()), the piles themselves
+// only store the byte encoding of each card
 public class Card {
 
 	public enum Suit {
@@ -16,44 +18,94 @@ public class Card {
 		Spade,
 		Club,
 	}
-	
+
 	final public static int RANK_ACE  	= 1;
 	final public static int RANK_JACK 	= 11;
 	final public static int RANK_QUEEN	= 12;
 	final public static int RANK_KING 	= 13;
 
-	protected Suit suit;
-	protected int rank;
-	
-	public Card(Suit _suit, int _rank) {
+	//a card is encoded in a byte as (suit << 4) | rank, which means that hearts and diamonds
+	//(the red suits) have bit 5 clear, and spades and clubs (the black suits) have it set
+	final public static int RANK_MASK	= 0x0F;
+	final public static int SUIT_SHIFT	= 4;
+	final public static int BLACK_BIT	= 0x20;
+	final public static int CODE_LIMIT	= 4 << SUIT_SHIFT;	//all codes are less than this
+
+	//the interned cards, indexed by their encoding
+	private static final Card cards[] = new Card[CODE_LIMIT];
+
+	static {
+		for (Suit suit : Suit.values()) {
+			for (int rank = RANK_ACE; rank <= RANK_KING; ++rank) {
+				byte code = encode(suit, rank);
+				cards[code] = new Card(suit, rank, code);
+			}
+		}
+	}
+
+	final protected Suit suit;
+	final protected int rank;
+	final protected byte code;
+
+	private Card(Suit _suit, int _rank, byte _code) {
 		suit = _suit;
 		rank = _rank;
+		code = _code;
+	}
+
+	public static byte encode(Suit suit, int rank) {
+		return (byte) ((suit.ordinal() << SUIT_SHIFT) | rank);
+	}
+
+	public static int rankOf(byte code) {
+		return code & RANK_MASK;
+	}
+
+	public static int suitOf(byte code) {
+		return code >> SUIT_SHIFT;
+	}
+
+	public static boolean isBlack(byte code) {
+		return (code & BLACK_BIT) != 0;
 	}
-	
+
+	//returns the interned card object for an encoded card
+	public static Card get(byte code) {
+		return cards[code];
+	}
+
+	public static Card get(Suit suit, int rank) {
+		return cards[encode(suit, rank)];
+	}
+
 	public Suit getSuit() {
 		return suit;
 	}
-	
+
 	public int getRank() {
 		return rank;
 	}
-	
+
+	public byte getCode() {
+		return code;
+	}
+
 	public boolean isRed() {
-		return suit == Suit.Heart || suit == Suit.Diamond;
+		return (code & BLACK_BIT) == 0;
 	}
-	
+
 	public boolean isBlack() {
-		return suit == Suit.Spade || suit == Suit.Club;
+		return (code & BLACK_BIT) != 0;
 	}
-	
+
 	public boolean isAlternateColour(Card other) {
-		return (isRed() && other.isBlack()) || (isBlack() && other.isRed());
+		return ((code ^ other.code) & BLACK_BIT) != 0;
 	}
-	
+
 	public boolean isRankedOneAbove(Card other) {
 		return rank == other.rank + 1;
 	}
-	
+
 	public boolean isRankedOneBelow(Card other) {
 		return rank == other.rank - 1;
 	}
@@ -0,0 +1,218 @@
+
+/*
+ *	Solitaire - CardAnimator.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+//moves cards smoothly to where the game has put them, a frame at a time. the game itself has already
+//finished the move, so nothing waits for the animation: the cards are just left out of the top of the pile
+//they are going to (see Layout.setFlying) and drawn on top of the board until they get there. every card
+//moving is kept in the flat arrays below, so a frame doesn't create any objects however many there are,
+//and only the area they move through is drawn again
+public abstract class CardAnimator {
+
+	static final int MAX_FLIGHTS = 52;
+	static final int FRAME_MILLIS = 1000 / 60;
+
+	//how long a card takes to get somewhere, which is longer the further it goes (at the normal window size)
+	static final long MIN_NANOS = 80000000L;
+	static final long MAX_NANOS = 250000000L;
+	static final long NANOS_PER_PIXEL = 400000L;
+
+	protected Layout layout;
+	protected Timer timer;
+
+	//each card moving, in the order they were added
+	protected int count;
+	protected int pile[] = new int[MAX_FLIGHTS];
+	protected byte code[] = new byte[MAX_FLIGHTS];
+	protected int fromX[] = new int[MAX_FLIGHTS];
+	protected int fromY[] = new int[MAX_FLIGHTS];
+	protected int toX[] = new int[MAX_FLIGHTS];
+	protected int toY[] = new int[MAX_FLIGHTS];
+	protected long start[] = new long[MAX_FLIGHTS];
+	protected long end[] = new long[MAX_FLIGHTS];
+	protected int x[] = new int[MAX_FLIGHTS];		//where it is drawn now
+	protected int y[] = new int[MAX_FLIGHTS];
+
+	//when the last card going to each pile gets there, so that the cards land from the bottom of the pile
+	//up, which keeps the ones still moving at the top of it
+	protected long pileEnd[] = new long[Layout.PILE_COUNT];
+	protected long tickTime;						//when the cards were last moved
+
+	//the area to draw again after moving the cards, worked out without making rectangles
+	protected int dirtyLeft;
+	protected int dirtyTop;
+	protected int dirtyRight;
+	protected int dirtyBottom;
+
+	public CardAnimator(Layout _layout) {
+		layout = _layout;
+		timer = new Timer(FRAME_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				tick(System.nanoTime());
+			}
+		});
+	}
+
+	protected abstract void drawCard(Graphics g, int x, int y, byte code);
+	protected abstract void repaintArea(int x, int y, int width, int height);
+
+	public boolean isAnimating() {
+		return count != 0;
+	}
+
+	//starts moving a card that the game has put on top of a pile from where it was drawn before, after
+	//waiting for the delay. cards going to the same pile have to be added from the bottom up
+	public void add(int _pile, byte _code, int _fromX, int _fromY, int _toX, int _toY, long delayNanos) {
+		if (count == MAX_FLIGHTS) {
+			finish();
+		}
+
+		long now = System.nanoTime();
+		double distance = Math.hypot(_toX - _fromX, _toY - _fromY) / layout.scale;
+		long duration = Math.max(MIN_NANOS, Math.min(MAX_NANOS, (long) (distance * NANOS_PER_PIXEL)));
+
+		int i = count++;
+		pile[i] = _pile;
+		code[i] = _code;
+		fromX[i] = _fromX;
+		fromY[i] = _fromY;
+		toX[i] = _toX;
+		toY[i] = _toY;
+		x[i] = _fromX;
+		y[i] = _fromY;
+		start[i] = now + delayNanos;
+		end[i] = start[i] + duration;
+		if (layout.flying[_pile] != 0 && end[i] < pileEnd[_pile]) {
+			end[i] = pileEnd[_pile];
+		}
+		pileEnd[_pile] = end[i];
+
+		layout.setFlying(_pile, layout.flying[_pile] + 1);
+		repaintArea(_fromX, _fromY, layout.cardWidth, layout.cardHeight);
+
+		if (!timer.isRunning()) {
+			timer.start();
+		}
+	}
+
+	//moves every card to where it should be at this time, landing the ones that have got there
+	public void tick(long now) {
+		resetDirty();
+
+		tickTime = now;
+
+		int kept = 0;
+		for (int i = 0; i < count; ++i) {
+			if (now >= end[i]) {
+				addDirty(x[i], y[i]);
+				land(i);
+				continue;
+			}
+
+			//the cards that haven't set off yet don't need drawing again
+			if (now > start[i]) {
+				//fast at first, slowing down as it gets there
+				double t = 1 - (now - start[i]) / (double) (end[i] - start[i]);
+				double moved = 1 - t * t * t;
+				addDirty(x[i], y[i]);
+				x[i] = fromX[i] + (int) Math.round((toX[i] - fromX[i]) * moved);
+				y[i] = fromY[i] + (int) Math.round((toY[i] - fromY[i]) * moved);
+				addDirty(x[i], y[i]);
+			}
+
+			if (kept != i) {
+				copy(i, kept);
+			}
+			++kept;
+		}
+		count = kept;
+
+		repaintDirty();
+		if (count == 0) {
+			timer.stop();
+		}
+	}
+
+	//puts every card where it is going straight away, eg. when the player does something else
+	public void finish() {
+		if (count == 0) {
+			return;
+		}
+
+		resetDirty();
+		for (int i = 0; i < count; ++i) {
+			addDirty(x[i], y[i]);
+			land(i);
+		}
+		count = 0;
+		repaintDirty();
+		timer.stop();
+	}
+
+	//the card is drawn in its pile from now on
+	protected void land(int i) {
+		addDirty(toX[i], toY[i]);
+		layout.setFlying(pile[i], layout.flying[pile[i]] - 1);
+	}
+
+	protected void copy(int from, int to) {
+		pile[to] = pile[from];
+		code[to] = code[from];
+		fromX[to] = fromX[from];
+		fromY[to] = fromY[from];
+		toX[to] = toX[from];
+		toY[to] = toY[from];
+		start[to] = start[from];
+		end[to] = end[from];
+		x[to] = x[from];
+		y[to] = y[from];
+	}
+
+	//draws the moving cards on top of the board. the ones that haven't set off yet are under the rest, with
+	//the last ones added at the bottom, as they came from further down their piles
+	public void paint(Graphics g) {
+		for (int i = count - 1; i >= 0; --i) {
+			if (tickTime <= start[i]) {
+				drawCard(g, x[i], y[i], code[i]);
+			}
+		}
+		for (int i = 0; i < count; ++i) {
+			if (tickTime > start[i]) {
+				drawCard(g, x[i], y[i], code[i]);
+			}
+		}
+	}
+
+	protected void resetDirty() {
+		dirtyLeft = Integer.MAX_VALUE;
+		dirtyTop = Integer.MAX_VALUE;
+		dirtyRight = Integer.MIN_VALUE;
+		dirtyBottom = Integer.MIN_VALUE;
+	}
+
+	//adds a card at this position to the area to draw again
+	protected void addDirty(int _x, int _y) {
+		dirtyLeft = Math.min(dirtyLeft, _x);
+		dirtyTop = Math.min(dirtyTop, _y);
+		dirtyRight = Math.max(dirtyRight, _x + layout.cardWidth + 1);
+		dirtyBottom = Math.max(dirtyBottom, _y + layout.cardHeight + 1);
+	}
+
+	protected void repaintDirty() {
+		if (dirtyRight > dirtyLeft) {
+			repaintArea(dirtyLeft, dirtyTop, dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+		}
+	}
+}
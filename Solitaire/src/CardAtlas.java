@@ -0,0 +1,168 @@
+
+/*
+ *	Solitaire - CardAtlas.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+//every card face and the back of a card drawn once into a single image, so that drawing a card
+//is just copying part of it. the faces are in a row for each suit, in rank order, and the back
+//is at the end of the first row. it is only drawn again when the card size or the theme changes.
+//the cards are drawn with as many pixels as they cover on the screen (which can be more than their
+//size in the window on high DPI screens), and scaled from the size the card drawing code uses,
+//so copying a card never scales it.
+//if there is a screen to draw to, the image is also kept in video memory as a VolatileImage,
+//which is copied back from the normal one whenever the video memory is lost
+public abstract class CardAtlas {
+
+	static final int COLUMNS = Card.RANK_KING + 1;	//a column for each rank, and one for the back
+	static final int ROWS = 4;
+	static final int BACK_COLUMN = Card.RANK_KING;
+
+	protected int baseWidth;					//the size renderFace and renderBack draw a card at
+	protected int baseHeight;
+	protected int cardWidth;					//the size a card is drawn at in the window
+	protected int cardHeight;
+	protected double pixelScale;				//the screen's pixels for each unit of the window
+	protected int cellWidth;					//the size of each card in the image
+	protected int cellHeight;
+	protected int theme;
+
+	protected BufferedImage image;
+	protected VolatileImage volatileImage;
+	protected GraphicsConfiguration config;
+
+	public CardAtlas(int _baseWidth, int _baseHeight) {
+		baseWidth = _baseWidth;
+		baseHeight = _baseHeight;
+	}
+
+	//draws a card from scratch at the base size, these are only called while the atlas is being made
+	protected abstract void renderFace(Graphics g, int x, int y, Card card);
+	protected abstract void renderBack(Graphics g, int x, int y);
+
+	//makes sure the atlas is for the current size, screen and theme, the configuration is for the screen being
+	//drawn to, or null if it isn't being drawn to the screen (then there is no VolatileImage)
+	public void validate(GraphicsConfiguration _config, int width, int height, double _pixelScale, int _theme) {
+		if (image == null || width != cardWidth || height != cardHeight || _pixelScale != pixelScale || _theme != theme) {
+			cardWidth = width;
+			cardHeight = height;
+			pixelScale = _pixelScale;
+			cellWidth = (int) Math.round(width * pixelScale);
+			cellHeight = (int) Math.round(height * pixelScale);
+			theme = _theme;
+			config = _config;
+			render();
+			createVolatileImage();
+
+		} else if (_config != config) {
+			//eg. the window was moved to another screen
+			config = _config;
+			createVolatileImage();
+		}
+	}
+
+	protected void render() {
+		int width = cellWidth * COLUMNS;
+		int height = cellHeight * ROWS;
+		image = config != null ? config.createCompatibleImage(width, height) : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+		Graphics2D g = image.createGraphics();
+		for (Card.Suit suit : Card.Suit.values()) {
+			for (int rank = Card.RANK_ACE; rank <= Card.RANK_KING; ++rank) {
+				Graphics2D cell = createCellGraphics(g, rank - Card.RANK_ACE, suit.ordinal());
+				renderFace(cell, 0, 0, Card.get(suit, rank));
+				cell.dispose();
+			}
+		}
+		Graphics2D cell = createCellGraphics(g, BACK_COLUMN, 0);
+		renderBack(cell, 0, 0);
+		cell.dispose();
+		g.dispose();
+	}
+
+	//a Graphics for drawing a card at the base size into a cell, which is scaled to fit it
+	protected Graphics2D createCellGraphics(Graphics2D g, int column, int row) {
+		Graphics2D cell = (Graphics2D) g.create(cellX(column), cellY(row), cellWidth, cellHeight);
+
+		//any pictures are scaled smoothly, and when the cards aren't at their base size the edges of
+		//everything else are smoothed as well, as they no longer line up with the pixels
+		cell.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		if (cellWidth != baseWidth || cellHeight != baseHeight) {
+			cell.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			cell.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			cell.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			cell.scale(cellWidth / (double) baseWidth, cellHeight / (double) baseHeight);
+		}
+		return cell;
+	}
+
+	protected void createVolatileImage() {
+		if (volatileImage != null) {
+			volatileImage.flush();
+			volatileImage = null;
+		}
+		if (config != null) {
+			volatileImage = config.createCompatibleVolatileImage(image.getWidth(), image.getHeight());
+			restoreVolatileImage();
+		}
+	}
+
+	protected void restoreVolatileImage() {
+		Graphics2D g = volatileImage.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+	}
+
+	protected int cellX(int column) {
+		return column * cellWidth;
+	}
+
+	protected int cellY(int row) {
+		return row * cellHeight;
+	}
+
+	public void drawFace(Graphics g, int x, int y, Card card) {
+		drawCell(g, x, y, cellX(card.rank - Card.RANK_ACE), cellY(card.suit.ordinal()));
+	}
+
+	public void drawBack(Graphics g, int x, int y) {
+		drawCell(g, x, y, cellX(BACK_COLUMN), cellY(0));
+	}
+
+	protected void drawCell(Graphics g, int x, int y, int cellX, int cellY) {
+		//cards outside of the area being drawn again are skipped
+		if (!g.hitClip(x, y, cardWidth, cardHeight)) {
+			return;
+		}
+		
+		Image source = image;
+
+		if (volatileImage != null) {
+			int status = volatileImage.validate(config);
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				createVolatileImage();
+			} else if (status == VolatileImage.IMAGE_RESTORED) {
+				restoreVolatileImage();
+			}
+			source = volatileImage;
+		}
+
+		g.drawImage(source, x, y, x + cardWidth, y + cardHeight, cellX, cellY, cellX + cellWidth, cellY + cellHeight, null);
+
+		//if the video memory was lost while drawing, draw it again from the normal image
+		if (source == volatileImage && volatileImage.contentsLost()) {
+			g.drawImage(image, x, y, x + cardWidth, y + cardHeight, cellX, cellY, cellX + cellWidth, cellY + cellHeight, null);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+
+/*
+ *	Solitaire - ConcurrentTranspositionTable.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+//a TranspositionTable that many threads can add to at once. the positions are split
+//between a number of smaller tables by their hash, each with its own lock, so two threads
+//only wait for each other if they happen to add to the same part at the same time
+public class ConcurrentTranspositionTable {
+
+	protected TranspositionTable stripes[];
+	protected int stripeMask;
+
+	//the number of stripes is rounded up to a power of two, it should be a good deal
+	//more than the number of threads using the table
+	public ConcurrentTranspositionTable(int stripeCount, int capacity) {
+		int count = Integer.highestOneBit(Math.max(stripeCount, 2) - 1) << 1;
+		stripes = new TranspositionTable[count];
+		stripeMask = count - 1;
+		for (int i = 0; i < count; ++i) {
+			stripes[i] = new TranspositionTable(capacity / count);
+		}
+	}
+
+	//not safe to call while other threads are adding
+	public void clear() {
+		for (TranspositionTable stripe : stripes) {
+			stripe.clear();
+		}
+	}
+
+	public int size() {
+		int count = 0;
+		for (TranspositionTable stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.size();
+			}
+		}
+		return count;
+	}
+
+	//adds a position, returning false if it was already in the table
+	//(the stripe is picked with the low bits, the table inside the stripe mixes all of them)
+	public boolean add(long hash) {
+		TranspositionTable stripe = stripes[(int) hash & stripeMask];
+		synchronized (stripe) {
+			return stripe.add(hash);
+		}
+	}
+}
@@ -0,0 +1,378 @@
+
+/*
+ *	Solitaire - DealIndex.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+//a file of deals with how hard the solver found them, built from the output of one or more surveys (see
+//Survey) and sorted by scoring mode, then draw mode, then result, then difficulty. the file is mapped into
+//memory instead of being read, so opening it costs nothing however many deals it has, and finding the deals
+//of a given difficulty is a binary search that only touches the pages it looks at
+//
+//Vegas scoring limits how many times the hand can be gone through, so a deal can be winnable with standard
+//scoring but not with Vegas scoring, and the two are kept apart. no scoring plays the same as standard
+//
+//the solution length kept for a deal is that of the solution the solver found, which is often not the
+//shortest, as the search stops at the first win. it only puts deals that took the same number of
+//positions in order, so it has little effect on how hard a deal is graded
+//
+//each deal is two longs, which sort in the same order as the deals:
+//	whether it was solved with Vegas scoring (1 bit), the draw mode (1 bit), the result (2 bits, see
+//	Solver.Result), and the positions searched (59 bits). the top bit is always 0, so the keys sort as signed
+//	the length of the solution found (32 bits), and the seed (32 bits)
+public class DealIndex {
+
+	static final int MAGIC = 0x534F4C58;			//"SOLX"
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 16;				//magic, version, and the number of deals
+	static final int RECORD_SIZE = 16;
+
+	//a buffer can only map 2GB, so the file is mapped in pieces of this many deals
+	static final int SEGMENT_SHIFT = 26;
+	static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+	static final int VEGAS_SHIFT = 62;
+	static final int DRAW_SHIFT = 61;
+	static final int RESULT_SHIFT = 59;
+	static final long NODES_MASK = (1L << RESULT_SHIFT) - 1;
+	static final int SOLUTION_SHIFT = 32;
+
+	//the difficulties asked for by the Preset games menu, each is a third of the winnable deals
+	static final int EASY = 0;
+	static final int MEDIUM = 1;
+	static final int HARD = 2;
+	static final int DIFFICULTIES = 3;
+
+	protected MappedByteBuffer segments[];
+	protected long count;
+
+	public DealIndex(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) != -1) {
+			}
+			header.flip();
+			if (header.remaining() != HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(file + " is not a deal index");
+			}
+			count = header.getLong();
+			if (count < 0 || HEADER_SIZE + count * RECORD_SIZE != channel.size()) {
+				throw new IOException(file + " is the wrong size for a deal index of " + count + " deals");
+			}
+
+			//the mappings stay valid after the channel is closed
+			segments = new MappedByteBuffer[(int) ((count + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+			for (int i = 0; i < segments.length; ++i) {
+				long first = (long) i << SEGMENT_SHIFT;
+				long deals = Math.min(count - first, 1L << SEGMENT_SHIFT);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, deals * RECORD_SIZE);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	public long size() {
+		return count;
+	}
+
+	protected long getKey(long index) {
+		return segments[(int) (index >>> SEGMENT_SHIFT)].getLong((int) (index & SEGMENT_MASK) * RECORD_SIZE);
+	}
+
+	protected long getDetails(long index) {
+		return segments[(int) (index >>> SEGMENT_SHIFT)].getLong((int) (index & SEGMENT_MASK) * RECORD_SIZE + 8);
+	}
+
+	public int getSeed(long index) {
+		return (int) getDetails(index);
+	}
+
+	public boolean isVegas(long index) {
+		return (getKey(index) >>> VEGAS_SHIFT & 1) != 0;
+	}
+
+	public boolean isDraw3(long index) {
+		return (getKey(index) >>> DRAW_SHIFT & 1) != 0;
+	}
+
+	public Solver.Result getResult(long index) {
+		return Solver.Result.values()[(int) (getKey(index) >>> RESULT_SHIFT) & 3];
+	}
+
+	public long getNodes(long index) {
+		return getKey(index) & NODES_MASK;
+	}
+
+	//the length of the solution the solver found, which isn't necessarily the shortest
+	public int getSolutionLength(long index) {
+		return (int) (getDetails(index) >>> SOLUTION_SHIFT);
+	}
+
+	static long makeKey(boolean vegas, boolean draw3, Solver.Result result, long nodes) {
+		return (vegas ? 1L : 0L) << VEGAS_SHIFT | (draw3 ? 1L : 0L) << DRAW_SHIFT | (long) result.ordinal() << RESULT_SHIFT | Math.min(nodes, NODES_MASK);
+	}
+
+	static long makeDetails(int solutionLength, int seed) {
+		return (long) solutionLength << SOLUTION_SHIFT | (seed & 0xFFFFFFFFL);
+	}
+
+	//the index of the first deal with a key at least this one, or the number of deals if there isn't one
+	protected long lowerBound(long key) {
+		long low = 0;
+		long high = count;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (getKey(middle) < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	//the number of winnable deals for a scoring and draw mode
+	public long countWinnable(boolean vegas, boolean draw3) {
+		return lowerBound(makeKey(vegas, draw3, Solver.Result.Unwinnable, 0)) - lowerBound(makeKey(vegas, draw3, Solver.Result.Winnable, 0));
+	}
+
+	//picks a winnable deal of a difficulty (EASY, MEDIUM or HARD) at random, returning its index, or -1 if
+	//there are none for the scoring and draw mode. the winnable deals for each mode are next to each other
+	//in the file, easiest first, so each difficulty is a third of them
+	public long pickWinnable(boolean vegas, boolean draw3, int difficulty, Random random) {
+		long first = lowerBound(makeKey(vegas, draw3, Solver.Result.Winnable, 0));
+		long deals = lowerBound(makeKey(vegas, draw3, Solver.Result.Unwinnable, 0)) - first;
+		if (deals == 0) {
+			return -1;
+		}
+
+		long start = first + deals * difficulty / DIFFICULTIES;
+		long end = first + deals * (difficulty + 1) / DIFFICULTIES;
+		if (end == start) {
+			end = start + 1;
+		}
+		return start + (long) (random.nextDouble() * (end - start));
+	}
+
+	//builds an index from the CSV files written by Survey. the deals are sorted in memory, which needs
+	//16 bytes for each deal, and the index is written next to the output first, so an old index stays
+	//whole until the new one is finished
+	//
+	//a survey is one mode, with every seed from the first in order, so each file covers a range of seeds.
+	//surveys that overlap would give the same deal twice, so a seed is only taken from the first file
+	//that has it for its mode
+	public static long build(File output, File surveys[]) throws IOException {
+		long keys[] = new long[1 << 16];
+		long details[] = new long[keys.length];
+		int deals = 0;
+		ArrayList<long[]> ranges = new ArrayList<long[]>();		//{mode, first seed, last seed} of each file read
+
+		for (File survey : surveys) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(survey), StandardCharsets.US_ASCII), 1 << 16);
+			long range[] = null;
+			try {
+				String line = reader.readLine();
+				if (line == null || !line.equals(Survey.HEADER.trim())) {
+					throw new IOException(survey + " is not the output of a survey");
+				}
+
+				while ((line = reader.readLine()) != null) {
+					String fields[] = line.split(",");
+					if (fields.length != 7) {
+						throw new IOException(survey + " has a bad line: " + line);
+					}
+
+					boolean vegas = fields[2].equals("vegas");
+					boolean draw3 = fields[1].equals("draw3");
+					long mode = (vegas ? 2 : 0) + (draw3 ? 1 : 0);
+					long seed = Long.parseLong(fields[0]);
+					if (range == null) {
+						range = new long[] {mode, seed, seed};
+					} else if (mode != range[0] || seed != range[2] + 1) {
+						throw new IOException(survey + " is not one survey in seed order, at: " + line);
+					} else {
+						range[2] = seed;
+					}
+					if (isCovered(ranges, mode, seed)) {
+						continue;
+					}
+
+					if (deals == keys.length) {
+						if (deals == Integer.MAX_VALUE - 8) {
+							throw new IOException("too many deals to sort in memory");
+						}
+						int length = (int) Math.min((long) deals * 3 / 2, Integer.MAX_VALUE - 8);
+						long newKeys[] = new long[length];
+						long newDetails[] = new long[length];
+						System.arraycopy(keys, 0, newKeys, 0, deals);
+						System.arraycopy(details, 0, newDetails, 0, deals);
+						keys = newKeys;
+						details = newDetails;
+					}
+
+					Solver.Result result = Solver.Result.valueOf(fields[3]);
+					keys[deals] = makeKey(vegas, draw3, result, Long.parseLong(fields[4]));
+					details[deals] = makeDetails(Integer.parseInt(fields[5]), (int) seed);
+					++deals;
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException(survey + " has a bad line: " + e.getMessage());
+			} finally {
+				reader.close();
+			}
+
+			if (range != null) {
+				ranges.add(range);
+			}
+		}
+
+		sort(keys, details, 0, deals - 1);
+
+		File temporary = new File(output.getPath() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(4096 * RECORD_SIZE);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(deals);
+
+			for (int i = 0; i < deals; ++i) {
+				if (!buffer.hasRemaining()) {
+					writeAll(channel, buffer);
+				}
+				buffer.putLong(keys[i]);
+				buffer.putLong(details[i]);
+			}
+			writeAll(channel, buffer);
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+
+		Files.move(temporary.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return deals;
+	}
+
+	//true if one of the files already read has a seed for a mode
+	protected static boolean isCovered(ArrayList<long[]> ranges, long mode, long seed) {
+		for (long range[] : ranges) {
+			if (range[0] == mode && seed >= range[1] && seed <= range[2]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected static void writeAll(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	//sorts the deals by key then details, keeping each pair together. this is a quicksort that recurses
+	//into the smaller half, so the stack stays shallow for hundreds of millions of deals
+	protected static void sort(long keys[], long details[], int low, int high) {
+		while (high - low > 16) {
+			int middle = (low + high) >>> 1;
+			long pivotKey = keys[middle];
+			long pivotDetails = details[middle];
+
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compare(keys[i], details[i], pivotKey, pivotDetails) < 0) {
+					++i;
+				}
+				while (compare(keys[j], details[j], pivotKey, pivotDetails) > 0) {
+					--j;
+				}
+				if (i <= j) {
+					swap(keys, details, i++, j--);
+				}
+			}
+
+			if (j - low < high - i) {
+				sort(keys, details, low, j);
+				low = i;
+			} else {
+				sort(keys, details, i, high);
+				high = j;
+			}
+		}
+
+		//the last few are put in order one at a time
+		for (int i = low + 1; i <= high; ++i) {
+			for (int j = i; j > low && compare(keys[j - 1], details[j - 1], keys[j], details[j]) > 0; --j) {
+				swap(keys, details, j - 1, j);
+			}
+		}
+	}
+
+	protected static int compare(long key, long detail, long otherKey, long otherDetail) {
+		int order = Long.compare(key, otherKey);
+		return order != 0 ? order : Long.compare(detail, otherDetail);
+	}
+
+	protected static void swap(long keys[], long details[], int i, int j) {
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		long detail = details[i];
+		details[i] = details[j];
+		details[j] = detail;
+	}
+
+	//eg. java DealIndex deals.index survey-draw1.csv survey-draw3.csv survey-draw3-vegas.csv
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: DealIndex <output.index> <survey.csv>...");
+			System.out.println("builds an index of the deals in surveys, for the Preset games menu");
+			return;
+		}
+
+		File surveys[] = new File[args.length - 1];
+		for (int i = 1; i < args.length; ++i) {
+			surveys[i - 1] = new File(args[i]);
+		}
+
+		long startTime = System.currentTimeMillis();
+		long deals = build(new File(args[0]), surveys);
+		System.out.printf("%d deals indexed in %d ms%n", deals, System.currentTimeMillis() - startTime);
+
+		DealIndex index = new DealIndex(new File(args[0]));
+		for (int mode = 0; mode < 4; ++mode) {
+			boolean vegas = mode >= 2;
+			boolean draw3 = (mode & 1) != 0;
+			long winnable = index.countWinnable(vegas, draw3);
+			if (winnable == 0) {
+				continue;
+			}
+
+			long first = index.lowerBound(makeKey(vegas, draw3, Solver.Result.Winnable, 0));
+			System.out.printf("%s %s: %d winnable, hard deals from %d positions searched%n", draw3 ? "draw3" : "draw1",
+					vegas ? "vegas" : "standard", winnable, index.getNodes(first + winnable * HARD / DIFFICULTIES));
+		}
+	}
+}
@@ -7,13 +7,10 @@
  * 
  */
 
-import java.util.Collections;
-import java.util.Random;
-
 public class DealPile extends Pile {
 
 	@Override
-	protected boolean canAdd(Card c) {
+	protected boolean canAdd(byte c) {
 		// should never be called
 		return false;
 	}
@@ -24,17 +21,54 @@ public class DealPile extends Pile {
 		return false;
 	}
 	
+	static final int DECK_SIZE = 52;
+
+	//the generator used by java.util.Random
+	static final long RANDOM_MULTIPLIER = 0x5DEECE66DL;
+	static final long RANDOM_ADDEND = 0xBL;
+	static final long RANDOM_MASK = (1L << 48) - 1;
+
+	//fills an empty pile with a shuffled deck
 	public void fill(int seed) {
+		shuffle(seed, cards);
+		head = 0;
+		size = DECK_SIZE;
+		rehash();
+	}
+
+	//writes a shuffled deck into the start of an array, top card first. this must make exactly the same swaps
+	//as Collections.shuffle(list, new Random(seed)) so that seeds deal the same games, so it does what
+	//Random.nextInt() does, but with the generator's state kept in a local instead of a new Random (which
+	//would also update it atomically for every card)
+	static void shuffle(int seed, byte deck[]) {
 		// add one card of every suit
+		int count = 0;
 		for (int rank = Card.RANK_ACE; rank <= Card.RANK_KING; ++rank) {
-			cards.add(new Card(Card.Suit.Club, rank));
-			cards.add(new Card(Card.Suit.Spade, rank));
-			cards.add(new Card(Card.Suit.Diamond, rank));
-			cards.add(new Card(Card.Suit.Heart, rank));
+			deck[count++] = Card.encode(Card.Suit.Club, rank);
+			deck[count++] = Card.encode(Card.Suit.Spade, rank);
+			deck[count++] = Card.encode(Card.Suit.Diamond, rank);
+			deck[count++] = Card.encode(Card.Suit.Heart, rank);
 		}
 
-		// ensure it is shuffled
-		Collections.shuffle(cards, new Random(seed));
+		long state = (seed ^ RANDOM_MULTIPLIER) & RANDOM_MASK;
+		for (int i = DECK_SIZE; i > 1; --i) {
+			state = (state * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+			int r = (int) (state >>> 17);
+			int j;
+
+			//Random.nextInt(i), which throws away values that would make the smaller numbers more likely
+			if ((i & (i - 1)) == 0) {
+				j = (int) ((i * (long) r) >> 31);
+			} else {
+				for (int u = r; u - (j = u % i) + i - 1 < 0; u = (int) (state >>> 17)) {
+					state = (state * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+				}
+			}
+
+			byte temp = deck[j];
+			deck[j] = deck[i - 1];
+			deck[i - 1] = temp;
+		}
 	}
 	
 	public DealPile() {
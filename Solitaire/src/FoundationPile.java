@@ -10,15 +10,15 @@
 public class FoundationPile extends Pile {
 
 	@Override
-	protected boolean canAdd(Card newCard) {
+	protected boolean canAdd(byte newCard) {
 		if (getHeight() == 0) {
 			// only an ace can be placed on an empty foundation
-			return newCard.rank == Card.RANK_ACE;
+			return Card.rankOf(newCard) == Card.RANK_ACE;
 		} else {
 			// otherwise ensure the suit is the same and it is one higher 
-			// than the previous card
-			Card top = getTopCard();
-			return top.getSuit() == newCard.getSuit() && top.isRankedOneBelow(newCard);
+			// than the previous card (with the suit in the high bits, that 
+			// is the same as the encoding being one higher)
+			return newCard == getTopCode() + 1;
 		}
 	}
 
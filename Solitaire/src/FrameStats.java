@@ -0,0 +1,96 @@
+
+/*
+ *	Solitaire - FrameStats.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+//how long the window takes to draw, kept in a histogram for each part of a frame (see GUI.paint), and how
+//long it takes for a mouse press or release to show up on the screen. the parts are added up over a
+//frame, and only recorded for the frames they were drawn in, so that eg. the tableau's times are for
+//the frames that drew some of it, not mostly zeros from the frames that copied it from its layer
+public class FrameStats {
+
+	static final int PAINT = 0;					//the whole of GUI.paint
+	static final int HAND = 1;
+	static final int TABLEAU = 2;
+	static final int FOUNDATIONS = 3;
+	static final int HOLDING = 4;				//the held cards, and the images they are dragged with
+	static final int STATUS_BAR = 5;
+	static final int INPUT_LATENCY = 6;			//from the mouse event to the end of the next frame
+	static final int COUNT = 7;
+
+	static final String NAMES[] = {"paint", "paintHand", "paintTableau", "paintFoundations", "paintHolding", "paintStatusBar", "input latency"};
+
+	protected Histogram histograms[] = new Histogram[COUNT];
+	protected long frameTimes[] = new long[COUNT];
+	protected boolean drawn[] = new boolean[COUNT];
+
+	public FrameStats() {
+		for (int i = 0; i < COUNT; ++i) {
+			histograms[i] = new Histogram();
+		}
+	}
+
+	public Histogram get(int part) {
+		return histograms[part];
+	}
+
+	//adds time spent drawing a part of the frame being drawn
+	public void add(int part, long nanoseconds) {
+		frameTimes[part] += nanoseconds;
+		drawn[part] = true;
+	}
+
+	//records the time of each part that was drawn since the last frame
+	public void endFrame() {
+		for (int i = 0; i < COUNT; ++i) {
+			if (drawn[i]) {
+				histograms[i].record(frameTimes[i]);
+				frameTimes[i] = 0;
+				drawn[i] = false;
+			}
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < COUNT; ++i) {
+			histograms[i].reset();
+			frameTimes[i] = 0;
+			drawn[i] = false;
+		}
+	}
+
+	//a line of text for a part, in milliseconds
+	public String format(int part) {
+		Histogram h = histograms[part];
+		return String.format(Locale.ROOT, "%-16s p50 %7.3f p99 %7.3f max %8.3f n %d", NAMES[part], h.getPercentile(50) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6, h.getCount());
+	}
+
+	//writes every histogram as comma separated values, first a summary line for each part, then the
+	//count in each bucket that isn't empty
+	public void write(PrintStream out) {
+		out.println("part,count,mean ms,p50 ms,p90 ms,p99 ms,p99.9 ms,max ms");
+		for (int i = 0; i < COUNT; ++i) {
+			Histogram h = histograms[i];
+			out.printf(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f%n", NAMES[i], h.getCount(), h.getMean() / 1e6, h.getPercentile(50) / 1e6,
+					h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6, h.getPercentile(99.9) / 1e6, h.getMax() / 1e6);
+		}
+
+		out.println();
+		out.println("part,bucket top ns,count");
+		for (int i = 0; i < COUNT; ++i) {
+			Histogram h = histograms[i];
+			for (int bucket = 0; bucket < h.counts.length; ++bucket) {
+				if (h.counts[bucket] != 0) {
+					out.printf(Locale.ROOT, "%s,%d,%d%n", NAMES[i], Histogram.bucketTop(bucket), h.counts[bucket]);
+				}
+			}
+		}
+	}
+}
@@ -10,9 +10,23 @@
 import java.awt.*;
 import java.awt.image.*;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.awt.event.*;
-import java.util.Iterator;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -26,66 +40,192 @@ public class GUI extends JPanel {
 	protected Solitaire game = null;
 	
 
-	//these are recomputed if the window changes dimentions
-	static int WINDOW_WIDTH = 1000;
-	static int WINDOW_HEIGHT = 700;
-	static int DRAW_X_POS = 25;
-	static int TABLEAU_X_POS = 25;
-	static int TABLEAU_DISTANCE = 137;
-	static int FOUNDATION_X_POS = TABLEAU_X_POS + 3 * TABLEAU_DISTANCE;
+	//the size the window starts at, where everything goes in it is worked out by the layout
+	static final int WINDOW_WIDTH = 1000;
+	static final int WINDOW_HEIGHT = 700;
 
 	static final int CARD_WIDTH = 105;
 	static final int CARD_HEIGHT = 150;
 	static final int CARD_BORDER = 6;
-	static final int DRAW_Y_POS = 20;
-	static final int TABLEAU_Y_POS = 200;
-	static final int FOUNDATION_Y_POS = DRAW_Y_POS;
-	static final int TABLEAU_Y_DISTANCE = 22;
-	static final int DEAL_3_SHIFT_DIST = 35;
+	
+	//everything used to draw is made once, so that drawing a frame doesn't create any objects
+	static final Color COLOUR_WHITE = new Color(0xFFFFFF);
+	static final Color COLOUR_BLACK = new Color(0x000000);
+	static final Color COLOUR_RED = new Color(0xFF0000);
+	static final Color COLOUR_CARD_BACK = new Color(0x0040C0);
+	static final Color COLOUR_TABLE = new Color(0x008000);
+	static final Color COLOUR_REFILL = new Color(0x00FF00);
+	static final Color COLOUR_WIN = new Color(0xFFFF00);
+	static final Color COLOUR_DIAGNOSTICS = new Color(0, 0, 0, 176);
+	static final Color COLOUR_HINT = new Color(0x00FFFF);
+	
+	static final Font FONT_RANK = new Font("Courier New", Font.BOLD, 22);
+	static final Font FONT_RANK_UPSIDE_DOWN = new Font("Courier New", Font.BOLD, -22);
+	static final Font FONT_ACE = new Font("Courier New", Font.BOLD, 8);
+	static final Font FONT_STATUS = new Font("Arial", Font.BOLD, 14);
+	static final Font FONT_WIN = new Font("Arial", Font.BOLD, 48);
+	static final Font FONT_DIAGNOSTICS = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	
+	static final BasicStroke STROKE_DEFAULT = new BasicStroke(1);
+	static final BasicStroke STROKE_NO_REFILL = new BasicStroke(5);
+	static final BasicStroke STROKE_HINT = new BasicStroke(4);
+	
+	static final String SCORE_LABEL = "Score: ";
+	static final String TIME_LABEL = "Time: ";
+	static final String WIN_CHANCE_LABEL = "Win chance: ";
+	static final String WIN_MESSAGE = "YOU WON!";
 		
 	protected int recentMouseX;
 	protected int recentMouseY;
 	protected int recentCardX;
 	protected int recentCardY;
 	
-	static protected BufferedImage cardImages[][];
+	//where every pile and card is drawn, which is also used to find what was clicked on
+	protected Layout layout = new Layout(WINDOW_WIDTH, WINDOW_HEIGHT);
+	
+	//moves the cards to where each move put them, the game has already made the move by then so anything
+	//the player does first puts the cards straight where they are going
+	protected CardAnimator animator;
+	static final long DEAL_STAGGER_NANOS = 40000000L;	//between each card dealt together in draw 3
+	
+	//suggests a move when asked from the Help menu (see HintEngine). the cards to move and where they go are
+	//outlined until the player does something. the search time can be set with -Dsolitaire.hintMillis
+	static final long HINT_MILLIS = Long.getLong("solitaire.hintMillis", 50);
+	protected HintEngine hints;
+	protected int hint = -1;						//the move being suggested (see Move), or -1
+	protected Rectangle hintFrom = new Rectangle();
+	protected Rectangle hintTo = new Rectangle();
+	
+	//once every card is face up, the game is finished for the player by putting the cards up one after another
+	//(see Solitaire.getFinishingMoves), which can be turned off from the Game menu
+	protected boolean autoComplete = true;
+	protected MoveList finishingMoves = new MoveList();
+	static final long AUTO_COMPLETE_STAGGER_NANOS = 60000000L;
+	
+	//the chance of winning from the current position (see ProbabilityEngine), shown on the status bar when turned
+	//on from the Game menu. the number of deals played for each position and the positions searched in each one
+	//can be set with -Dsolitaire.winSamples and -Dsolitaire.winPlayoutNodes
+	static final int WIN_SAMPLES = Integer.getInteger("solitaire.winSamples", 10000);
+	static final long WIN_PLAYOUT_NODES = Long.getLong("solitaire.winPlayoutNodes", WinEstimator.DEFAULT_PLAYOUT_NODES);
+	protected ProbabilityEngine probabilities;
+	protected boolean showWinChance;
+	protected int winChance = -1;					//as a percentage, or -1 before the first estimate
+	protected Solitaire estimatedGame;				//the game and position (see positionVersion) last estimated
+	protected int estimatedVersion;
+	
+	//the deals offered by difficulty in the Preset games menu come from this file (see DealIndex), which
+	//can be set with -Dsolitaire.dealIndex. the menu items are turned off if it can't be opened
+	static final String DEAL_INDEX_FILE = System.getProperty("solitaire.dealIndex", "deals.index");
+	static final String DIFFICULTY_NAMES[] = {"Easy", "Medium", "Hard"};
+	protected DealIndex dealIndex;
+	protected long gradedDeals[] = new long[4];		//winnable deals in the index for each mode, see gradedMode()
+	protected JMenuItem gradedBtns[] = new JMenuItem[DealIndex.DIFFICULTIES];
+	protected Random dealRandom = new Random();
+	
+	protected int paintedTime;						//the time shown on the status bar, so the timer only redraws it when it changes
+	
+	//the status bar text is written into these instead of new strings (see formatNumber)
+	protected char timeChars[] = new char[32];
+	protected char scoreChars[] = new char[32];
+	protected char winChanceChars[] = new char[32];
+	
+	//while cards are being dragged, the board under them is drawn from boardImage and the cards
+	//from holdingImage, so that each frame is just two copies however many cards there are
+	protected BufferedImage boardImage;
+	protected BufferedImage holdingImage;
+	protected boolean dragImagesValid;
+	
+	//each region of the board (see Solitaire.getVersion) is kept in its own image, which is only drawn
+	//again when the region changes, so drawing a frame only costs as much as what changed
+	protected BufferedImage layers[] = new BufferedImage[Solitaire.REGION_COUNT];
+	protected int layerVersions[] = new int[Solitaire.REGION_COUNT];
+	protected int layerFlying[] = new int[Solitaire.REGION_COUNT];		//see Layout.flying
+	protected boolean layerValid[] = new boolean[Solitaire.REGION_COUNT];
+	protected Solitaire layerGame;
+	protected int layerTheme;
+	protected Rectangle regionBounds = new Rectangle();
+	
+	//the screen's pixels for each unit of the window, which is more than one on high DPI screens that Java
+	//scales the window up for. the images the window is drawn from have this many pixels for each unit,
+	//so that they stay sharp
+	protected double pixelScale = 1;
+	protected GraphicsConfiguration pixelScaleConfig;
+	
+	protected BufferedImage cardImages[][];
 	static final int CARD_IMAGE_JACK = 0;
 	static final int CARD_IMAGE_QUEEN = 1;
 	static final int CARD_IMAGE_KING = 2;
+	static final String CARD_IMAGE_NAMES[] = {"jack", "queen", "king"};
+	
+	//the pictures are decoded in parallel in the background so the window can be shown straight away, and
+	//cards are drawn with a placeholder until their picture has loaded (see installCardImages)
+	protected ArrayList<Future<BufferedImage>> cardImageLoads = new ArrayList<Future<BufferedImage>>();
+	protected boolean cardImagesPending;
+	
+	//set with -Dsolitaire.startupTimes=true, to print how long after the program started the first frame
+	//was drawn and the pictures had loaded
+	protected boolean reportStartup = Boolean.getBoolean("solitaire.startupTimes");
+	protected boolean painted;
+	
+	//how long each part of a frame takes to draw, and how long clicks take to show up (see FrameStats). these
+	//are always recorded, and shown over the board while showDiagnostics is set (with F3)
+	protected FrameStats frameStats = new FrameStats();
+	protected boolean showDiagnostics;
+	protected String diagnosticsLines[] = new String[FrameStats.COUNT];
+	protected long inputTime;						//when the mouse event being handled happened, or 0
+	protected long latencyStart;					//when the oldest mouse event not drawn yet happened, or 0
 	
 	protected JMenuItem undoBtn;
 	protected JMenuItem cumulativeBtn;
 	protected JMenuItem timedBtn;
+	protected JMenuItem diagnosticsBtn;
+	protected JMenuItem autoCompleteBtn;
+	protected JMenuItem winChanceBtn;
 	
 	protected TexturePaint cardBackPaint;
 	protected TexturePaint pictureCardPaint;
 	
+	//every card drawn once, so that drawing a card is a single copy (see CardAtlas)
+	protected CardAtlas atlas;
+	protected int theme;							//changed whenever the card pictures change, so the atlas is drawn again
+	
 	protected GameOptions options;
+	
+	//finished games are added to the end of this file (see ReplayLog), or it is null to not keep them
+	protected File replayFile;
 
-	class CardClickInfo {
-	    public final int tableau;
-	    public final int cards;
-	    public final int cardX;
-	    public final int cardY;
-
-	    public CardClickInfo(int _tableau, int _cards, int _cardX, int _cardY) {
-	    	tableau = _tableau;
-	    	cards = _cards;
-	    	cardX = _cardX;
-	    	cardY = _cardY;
-	    }
+	protected void drawBackOfCard(Graphics g, int x, int y) {
+		atlas.drawBack(g, x, y);
 	}
 	
-	protected void drawBackOfCard(Graphics g, int x, int y) {
+	protected void drawCard(Graphics g, int x, int y, Card card) {
+		atlas.drawFace(g, x, y, card);
+	}
+	
+	//draws the cards of a pile where the layout put them
+	protected void drawPile(Graphics g, int pile) {
+		int first = layout.pileFirst[pile];
+		int end = first + layout.pileCount[pile];
+		for (int card = first; card < end; ++card) {
+			if (layout.cardCode[card] == Layout.BACK) {
+				drawBackOfCard(g, layout.cardX[card], layout.cardY[card]);
+			} else {
+				drawCard(g, layout.cardX[card], layout.cardY[card], Card.get(layout.cardCode[card]));
+			}
+		}
+	}
+	
+	//draws the back of a card from scratch, only used to make the atlas
+	protected void renderBackOfCard(Graphics g, int x, int y) {
 		Graphics2D g2 = (Graphics2D) g;
 
-		g.setColor(new Color(0xFFFFFF));
+		g.setColor(COLOUR_WHITE);
 		g.fillRect(x, y, CARD_WIDTH, CARD_HEIGHT);
 		
-		g.setColor(new Color(0x000000));
+		g.setColor(COLOUR_BLACK);
 		g.drawRect(x, y, CARD_WIDTH - 1, CARD_HEIGHT - 1);
 		
-		g.setColor(new Color(0x0040C0));
+		g.setColor(COLOUR_CARD_BACK);
 		g.fillRect(x + CARD_BORDER, y + CARD_BORDER, CARD_WIDTH - 2 * CARD_BORDER, CARD_HEIGHT - 2 * CARD_BORDER);
 		
 		g2.setPaint(cardBackPaint);
@@ -161,11 +301,12 @@ public class GUI extends JPanel {
 		
 	}
 	
-	protected void drawCard(Graphics g, int x, int y, Card card) {
-		g.setColor(new Color(0xFFFFFF));
+	//draws a card from scratch, only used to make the atlas
+	protected void renderCard(Graphics g, int x, int y, Card card) {
+		g.setColor(COLOUR_WHITE);
 		g.fillRect(x, y, CARD_WIDTH, CARD_HEIGHT);
 		
-		g.setColor(new Color(0x000000));
+		g.setColor(COLOUR_BLACK);
 		g.drawRect(x, y, CARD_WIDTH - 1, CARD_HEIGHT - 1);
 		
 		String rank = card.rank == Card.RANK_ACE   ? "A" : 
@@ -173,19 +314,19 @@ public class GUI extends JPanel {
 				      card.rank == Card.RANK_QUEEN ? "Q" :
 					  card.rank == Card.RANK_KING  ? "K" : String.format("%d", card.rank);
 		
-		g.setColor(new Color(card.isBlack() ? 0x000000 : 0xFF0000));
+		g.setColor(card.isBlack() ? COLOUR_BLACK : COLOUR_RED);
 		if (card.rank == 10) {
-			g.setFont(new Font("Courier New", Font.BOLD, 22));
+			g.setFont(FONT_RANK);
 			g.drawString("1", x + 4, y + 22);
 			g.drawString("0", x + 12, y + 22);
-			g.setFont(new Font("Courier New", Font.BOLD, -22));
+			g.setFont(FONT_RANK_UPSIDE_DOWN);
 			g.drawString("0", x + CARD_WIDTH - 7 - 5, y + CARD_HEIGHT - 22);
 			g.drawString("1", x + CARD_WIDTH - 7 + 3, y + CARD_HEIGHT - 22);
 			
 		} else {
-			g.setFont(new Font("Courier New", Font.BOLD, 22));
+			g.setFont(FONT_RANK);
 			g.drawString(rank, x + 5, y + 22);
-			g.setFont(new Font("Courier New", Font.BOLD, -22));
+			g.setFont(FONT_RANK_UPSIDE_DOWN);
 			g.drawString(rank, x + CARD_WIDTH - 5, y + CARD_HEIGHT - 22);
 		}
 		
@@ -203,7 +344,7 @@ public class GUI extends JPanel {
 				int ypoly2[] = {y + CARD_HEIGHT / 2 + 20, y + CARD_HEIGHT / 2 + 30, y + CARD_HEIGHT / 2 + 30};
 				g.fillPolygon(new Polygon(xpoly2, ypoly2, xpoly2.length));
 				
-				g.setFont(new Font("Courier New", Font.BOLD, 8));
+				g.setFont(FONT_ACE);
 				g.drawString("SOLITAIRE", x + CARD_WIDTH / 2 - 20, y + CARD_WIDTH / 2 + 62);
 
 			} else {
@@ -293,7 +434,13 @@ public class GUI extends JPanel {
 			try {
 				BufferedImage image = cardImages[card.suit.ordinal()][card.rank - Card.RANK_JACK];
 				if (image != null) {
-					g.drawImage(image.getScaledInstance(CARD_WIDTH * 44 / 72, CARD_HEIGHT * 14 / 16, Image.SCALE_DEFAULT), x + CARD_WIDTH * 14 / 72, y + CARD_HEIGHT / 16, null);
+					g.drawImage(image, x + CARD_WIDTH * 14 / 72, y + CARD_HEIGHT / 16, CARD_WIDTH * 44 / 72, CARD_HEIGHT * 14 / 16, null);
+				} else {
+					//the picture hasn't loaded yet
+					Graphics2D g2 = (Graphics2D) g;
+					g2.setPaint(pictureCardPaint);
+					g2.fillRect(x + CARD_WIDTH * 14 / 72, y + CARD_HEIGHT / 16, CARD_WIDTH * 44 / 72, CARD_HEIGHT * 14 / 16);
+					g2.setColor(card.isBlack() ? COLOUR_BLACK : COLOUR_RED);
 				}
 			} catch (Exception e) { ; }
 			g.drawRect(x + CARD_WIDTH * 14 / 72, y + CARD_HEIGHT / 16, CARD_WIDTH * 44 / 72, CARD_HEIGHT * 14 / 16);
@@ -305,138 +452,264 @@ public class GUI extends JPanel {
 	}
 	
 	protected void paintHand(Graphics g) {		
-		int dealCards = game.dealPile.getHeight();
+		int x = layout.pileX[Solitaire.DRAW_PILE_BASE];
+		int y = layout.pileY[Solitaire.DRAW_PILE_BASE];
+		int w = layout.cardWidth;
+		int h = layout.cardHeight;
 		
-		if (dealCards == 0) {
+		if (game.dealPile.getHeight() == 0) {
 			if (game.canFlipHand()) {
-				g.setColor(new Color(0x00FF00));
-				g.fillOval(DRAW_X_POS + CARD_WIDTH / 8, DRAW_Y_POS + (CARD_HEIGHT - CARD_WIDTH) / 2 + CARD_WIDTH / 8, CARD_WIDTH * 6 / 8, CARD_WIDTH * 6 / 8);
-				g.setColor(new Color(0x008000));
-				g.fillOval(DRAW_X_POS + CARD_WIDTH / 6, DRAW_Y_POS + (CARD_HEIGHT - CARD_WIDTH) / 2 + CARD_WIDTH / 6, CARD_WIDTH * 4 / 6, CARD_WIDTH * 4 / 6);
+				g.setColor(COLOUR_REFILL);
+				g.fillOval(x + w / 8, y + (h - w) / 2 + w / 8, w * 6 / 8, w * 6 / 8);
+				g.setColor(COLOUR_TABLE);
+				g.fillOval(x + w / 6, y + (h - w) / 2 + w / 6, w * 4 / 6, w * 4 / 6);
 			} else {
 				Graphics2D g2 = (Graphics2D) g;
-				g2.setColor(new Color(0xFF0000));
-				g2.setStroke(new BasicStroke(5));
-				g2.drawLine(DRAW_X_POS + CARD_WIDTH / 8, DRAW_Y_POS + (CARD_HEIGHT - CARD_WIDTH) / 2 + CARD_WIDTH / 8, DRAW_X_POS + CARD_WIDTH * 7 / 8, DRAW_Y_POS + (CARD_HEIGHT - CARD_WIDTH) / 2 + CARD_WIDTH * 7 / 8);
-				g2.drawLine(DRAW_X_POS + CARD_WIDTH / 8, DRAW_Y_POS + (CARD_HEIGHT - CARD_WIDTH) / 2 + CARD_WIDTH * 7 / 8, DRAW_X_POS + CARD_WIDTH * 7 / 8, DRAW_Y_POS + (CARD_HEIGHT - CARD_WIDTH) / 2 + CARD_WIDTH / 8);
-				g2.setStroke(new BasicStroke(1));
+				g2.setColor(COLOUR_RED);
+				g2.setStroke(STROKE_NO_REFILL);
+				g2.drawLine(x + w / 8, y + (h - w) / 2 + w / 8, x + w * 7 / 8, y + (h - w) / 2 + w * 7 / 8);
+				g2.drawLine(x + w / 8, y + (h - w) / 2 + w * 7 / 8, x + w * 7 / 8, y + (h - w) / 2 + w / 8);
+				g2.setStroke(STROKE_DEFAULT);
 			}
-			
+		}
+		
+		drawPile(g, Solitaire.DRAW_PILE_BASE);
+		drawPile(g, Solitaire.HAND_COLUMN_BASE);
+	}
+	
+	protected void paintTableau(Graphics g, int t) {
+		drawPile(g, t);
+	}
+	
+	protected void paintFoundation(Graphics g, int i) {
+		int f = Solitaire.FOUNDATION_COLUMN_BASE + i;
+		g.setColor(COLOUR_BLACK);
+		g.drawRect(layout.pileX[f], layout.pileY[f], layout.cardWidth, layout.cardHeight);
+		drawPile(g, f);
+	}
+	
+	//sets regionBounds to the area a region (see Solitaire.getVersion) is drawn in
+	protected void setRegionBounds(int region) {
+		regionBounds.setBounds(layout.regionX[region], layout.regionY[region], layout.regionWidth[region], layout.regionHeight[region]);
+	}
+	
+	//draws a region straight onto the window
+	protected void paintRegion(Graphics g, int region) {
+		long start = System.nanoTime();
+		if (region == Solitaire.STATUS_REGION) {
+			paintStatusBar(g);
+			frameStats.add(FrameStats.STATUS_BAR, System.nanoTime() - start);
+		} else if (region == Solitaire.HAND_COLUMN_BASE) {
+			paintHand(g);
+			frameStats.add(FrameStats.HAND, System.nanoTime() - start);
+		} else if (region >= Solitaire.FOUNDATION_COLUMN_BASE) {
+			paintFoundation(g, region - Solitaire.FOUNDATION_COLUMN_BASE);
+			frameStats.add(FrameStats.FOUNDATIONS, System.nanoTime() - start);
 		} else {
-			for (int i = 0; i < dealCards / 8 + 1; ++i) {
-				drawBackOfCard(g, DRAW_X_POS + 2 * i, DRAW_Y_POS + i);
-			}
+			paintTableau(g, region);
+			frameStats.add(FrameStats.TABLEAU, System.nanoTime() - start);
+		}
+	}
+	
+	//draws a region from its layer, first drawing the layer again if the region has changed since
+	//it was last drawn. regions outside of the area being drawn again are skipped
+	protected void paintLayer(Graphics g, int region) {
+		setRegionBounds(region);
+		Rectangle bounds = regionBounds;
+		if (bounds.width <= 0 || bounds.height <= 0 || !g.hitClip(bounds.x, bounds.y, bounds.width, bounds.height)) {
+			return;
 		}
 		
-		int shown = game.showingPile.getHeight() + game.discardPile.getHeight();
+		boolean stale = !layerValid[region] || layerVersions[region] != game.getVersion(region) || layerFlying[region] != layout.flying[region];
+		if (region == Solitaire.STATUS_REGION) {
+			//the time changes on its own, and any time penalties need to be taken before checking the version
+			game.getScore();
+			stale = !layerValid[region] || layerVersions[region] != game.getVersion(region) || paintedTime != game.getTime();
+		}
 		
-		if (shown != 0) {			
-			int xpos = DRAW_X_POS + TABLEAU_DISTANCE;
-			int ypos = DRAW_Y_POS;
-			int i = 0;
-			
-			Iterator<Card> reverseIter = game.discardPile.cards.descendingIterator();
-			while (reverseIter.hasNext()) {
-				Card card = reverseIter.next();
-				drawCard(g, xpos, ypos, card);
-				
-				if (i % 8 == 7) {
-					xpos += 2;
-					ypos += 1;
-				}
-				++i;
+		BufferedImage layer = layers[region];
+		if (stale) {
+			if (layer == null || layer.getWidth() != pixels(bounds.width) || layer.getHeight() != pixels(bounds.height)) {
+				layer = createImage(bounds.width, bounds.height, Transparency.OPAQUE);
+				layers[region] = layer;
 			}
 			
-			reverseIter = game.showingPile.cards.descendingIterator();
-			while (reverseIter.hasNext()) {
-				Card card = reverseIter.next();
-				drawCard(g, xpos, ypos, card);
-				xpos += 28;
-			}
+			Graphics2D lg = createGraphics(layer);
+			lg.translate(-bounds.x, -bounds.y);
+			lg.setColor(COLOUR_TABLE);
+			lg.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+			paintRegion(lg, region);
+			lg.dispose();
+			
+			layerVersions[region] = game.getVersion(region);
+			layerFlying[region] = layout.flying[region];
+			layerValid[region] = true;
 		}
-
+		
+		drawImagePart(g, layer, bounds.x, bounds.y, bounds.width, bounds.height);
 	}
 	
-	protected void paintTableau(Graphics g) {
-		for (int t = 0; t < 7; ++t) {
-			int ypos = TABLEAU_Y_POS;
-			for (@SuppressWarnings("unused") Card card : game.tableau[t].hiddenPile.cards) {
-				drawBackOfCard(g, TABLEAU_X_POS + t * TABLEAU_DISTANCE, ypos);
-				ypos += TABLEAU_Y_DISTANCE;
-			}
-			
-			Iterator<Card> reverseIter = game.tableau[t].visiblePile.cards.descendingIterator();
-			while (reverseIter.hasNext()) {
-				Card card = reverseIter.next();
-				drawCard(g, TABLEAU_X_POS + t * TABLEAU_DISTANCE, ypos, card);
-				ypos += TABLEAU_Y_DISTANCE;
-			}
+	//makes every layer be drawn again the next time it is used
+	protected void invalidateLayers() {
+		for (int i = 0; i < Solitaire.REGION_COUNT; ++i) {
+			layerValid[i] = false;
 		}
 	}
 	
-	protected void paintFoundations(Graphics g) {		
-		for (int i = 0; i < 4; ++i) {
-			g.setColor(new Color(0x000000));
-			g.drawRect(FOUNDATION_X_POS + i * TABLEAU_DISTANCE, FOUNDATION_Y_POS, CARD_WIDTH, CARD_HEIGHT);
-			
-			if (game.foundations[i].getHeight() != 0) {
-				drawCard(g, FOUNDATION_X_POS + i * TABLEAU_DISTANCE, FOUNDATION_Y_POS, game.foundations[i].getTopCard());
-			}
+	//draws the held cards with the top left of the first one at the given position
+	protected void paintHolding(Graphics g, int x, int y) {
+		for (int depth = game.holding.getHeight() - 1; depth >= 0; --depth) {
+			drawCard(g, x, y, game.holding.getCard(depth));
+			y += layout.holdingYDistance;
 		}
 	}
 	
-	protected void paintHolding(Graphics g) {
-		if (game.holding.getHeight() == 0) {
+	//picks up a change to the screen's pixel scale, eg. when the window is moved to another screen
+	protected void updatePixelScale() {
+		GraphicsConfiguration config = getGraphicsConfiguration();
+		if (config == pixelScaleConfig) {
 			return;
 		}
 		
-		int ypos = recentMouseY + recentCardY;
+		pixelScaleConfig = config;
+		double scale = config != null ? config.getDefaultTransform().getScaleX() : 1;
+		if (scale != pixelScale) {
+			pixelScale = scale;
+			invalidateLayers();
+			dragImagesValid = false;
+		}
+	}
+	
+	//the number of pixels something of this size in the window covers on the screen
+	protected int pixels(int size) {
+		return (int) Math.ceil(size * pixelScale);
+	}
+	
+	//an image for something of this size in the window, with a pixel for each pixel of the screen
+	protected BufferedImage createImage(int width, int height, int transparency) {
+		width = pixels(width);
+		height = pixels(height);
+		GraphicsConfiguration config = getGraphicsConfiguration();
+		if (config != null) {
+			return config.createCompatibleImage(width, height, transparency);
+		}
+		return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+	}
+	
+	//a Graphics for drawing into an image from createImage, in the window's units
+	protected Graphics2D createGraphics(BufferedImage image) {
+		Graphics2D g = image.createGraphics();
+		if (pixelScale != 1) {
+			g.scale(pixelScale, pixelScale);
+		}
+		return g;
+	}
+	
+	//draws the top left of an image from createImage, covering this much of the window
+	protected void drawImagePart(Graphics g, BufferedImage image, int x, int y, int width, int height) {
+		g.drawImage(image, x, y, x + width, y + height, 0, 0, pixels(width), pixels(height), null);
+	}
+	
+	//draws the board (without the held cards) into boardImage, and the held cards into holdingImage
+	protected void createDragImages() {
+		if (boardImage == null || boardImage.getWidth() != pixels(layout.width) || boardImage.getHeight() != pixels(layout.height)) {
+			boardImage = createImage(layout.width, layout.height, Transparency.OPAQUE);
+		}
+		Graphics2D g = createGraphics(boardImage);
+		paintBoard(g);
+		g.dispose();
+		
+		//big enough for the longest run of cards that can be picked up, so it can be reused for every drag
+		int width = layout.cardWidth;
+		int height = layout.cardHeight + (Card.RANK_KING - 1) * layout.holdingYDistance;
+		if (holdingImage == null || holdingImage.getWidth() != pixels(width) || holdingImage.getHeight() != pixels(height)) {
+			holdingImage = createImage(width, height, Transparency.TRANSLUCENT);
+		}
+		g = createGraphics(holdingImage);
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, width, height);
+		g.setComposite(AlphaComposite.SrcOver);
+		paintHolding(g, 0, 0);
+		g.dispose();
+		
+		dragImagesValid = true;
+	}
+	
+	//writes some text followed by a number into a buffer, returning the length, so that the numbers on
+	//the status bar don't need a new string every time they are drawn
+	static int formatNumber(char buffer[], String prefix, int value) {
+		int length = prefix.length();
+		prefix.getChars(0, length, buffer, 0);
+		
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
 		
-		Iterator<Card> reverseIter = game.holding.cards.descendingIterator();
-		while (reverseIter.hasNext()) {
-			Card card = reverseIter.next();
-			drawCard(g, recentMouseX + recentCardX, ypos, card);
-			ypos += 15;
+		int digits = 1;
+		for (int rest = value / 10; rest != 0; rest /= 10) {
+			++digits;
+		}
+		for (int i = length + digits - 1; i >= length; --i) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
 		}
+		return length + digits;
 	}
 	
 	protected void paintStatusBar(Graphics g) {		
-		g.setColor(new Color(0xFFFFFF));
-		g.fillRect(0, WINDOW_HEIGHT - 27, WINDOW_WIDTH, 27);
+		g.setColor(COLOUR_WHITE);
+		g.fillRect(0, layout.height - Layout.STATUS_BAR_HEIGHT, layout.width, Layout.STATUS_BAR_HEIGHT);
 
-		g.setColor(new Color(0x000000));
-		g.setFont(new Font("Arial", Font.BOLD, 14));
+		g.setColor(COLOUR_BLACK);
+		g.setFont(FONT_STATUS);
 		
-		String seedString = String.format("Seed: 0x%08X", game.seed);
-		//g.drawString(seedString, 9, WINDOW_HEIGHT - 9);
+		//g.drawString(String.format("Seed: 0x%08X", game.seed), 9, layout.height - 9);
 		
-		String timeString = String.format("Time: %d", game.getTime());
-		int timeWidth = g.getFontMetrics().stringWidth(timeString);
+		if (showWinChance && winChance != -1) {
+			int winChanceLength = formatNumber(winChanceChars, WIN_CHANCE_LABEL, winChance);
+			winChanceChars[winChanceLength++] = '%';
+			g.drawChars(winChanceChars, 0, winChanceLength, 9, layout.height - 9);
+		}
+		
+		paintedTime = game.getTime();
+		int timeLength = formatNumber(timeChars, TIME_LABEL, paintedTime);
+		int timeWidth = g.getFontMetrics().charsWidth(timeChars, 0, timeLength);
 		if (game.options.timed) {
-			g.drawString(timeString, WINDOW_WIDTH - 9 - timeWidth, WINDOW_HEIGHT - 9);
+			g.drawChars(timeChars, 0, timeLength, layout.width - 9 - timeWidth, layout.height - 9);
 		} else {
 			timeWidth = 0;
 		}
 		
 		if (game.options.scoring != Solitaire.ScoringMode.None) {
-			String scoreString = "";
+			int score = game.getScore();
+			int scoreLength = 0;
 			if (game.options.scoring == Solitaire.ScoringMode.Standard) {
-				scoreString = String.format("%d", game.getScore());
+				scoreLength = formatNumber(scoreChars, "", score);
 			} else if (game.options.scoring == Solitaire.ScoringMode.Vegas) {
-				int score = game.getScore();
-				scoreString = score < 0 ? String.format("-$%d", -score) : String.format("$%d", score);
+				scoreLength = score < 0 ? formatNumber(scoreChars, "-$", -score) : formatNumber(scoreChars, "$", score);
 			} else {
 				assert(false);
 			}
 			
-			int labelWidth = g.getFontMetrics().stringWidth("Score: ");
-			int scoreWidth = g.getFontMetrics().stringWidth(scoreString);
-			g.drawString("Score: ", WINDOW_WIDTH - 16 - timeWidth - scoreWidth - labelWidth, WINDOW_HEIGHT - 9);
+			int labelWidth = g.getFontMetrics().stringWidth(SCORE_LABEL);
+			int scoreWidth = g.getFontMetrics().charsWidth(scoreChars, 0, scoreLength);
+			g.drawString(SCORE_LABEL, layout.width - 16 - timeWidth - scoreWidth - labelWidth, layout.height - 9);
 	
-			if (game.getScore() < 0) {
-				g.setColor(new Color(0xFF0000));
+			if (score < 0) {
+				g.setColor(COLOUR_RED);
 			}
-			g.drawString(scoreString, WINDOW_WIDTH - 16 - timeWidth - scoreWidth, WINDOW_HEIGHT - 9);	
+			g.drawChars(scoreChars, 0, scoreLength, layout.width - 16 - timeWidth - scoreWidth, layout.height - 9);	
+		}
+	}
+	
+	//draws everything except the held cards and the status bar
+	protected void paintBoard(Graphics g) {
+		g.setColor(COLOUR_TABLE);
+		g.fillRect(0, 0, layout.width, layout.height);
+		
+		for (int region = 0; region <= Solitaire.HAND_COLUMN_BASE; ++region) {
+			paintLayer(g, region);
 		}
 	}
 	
@@ -445,101 +718,337 @@ public class GUI extends JPanel {
 		if (game == null) {
 			return;
 		}
-				
-		super.paint(g);
-		g.setColor(new Color(0x008000));
-		g.fillRect(0, 0, WINDOW_WIDTH, WINDOW_HEIGHT);
 		
-		paintHand(g);
-		paintTableau(g);
-		paintFoundations(g);
-		paintHolding(g);
-		paintStatusBar(g);
+		long start = System.nanoTime();
+		
+		//the whole window is drawn below, so Swing isn't asked to draw the (invisible) panel
+		//for the mouse first, as that creates new Graphics objects for every frame
+		installCardImages();
+		updatePixelScale();
+		atlas.validate(getGraphicsConfiguration(), layout.cardWidth, layout.cardHeight, pixelScale, theme);
+		layout.update(game);
+		
+		//the layers are all for one game, and one set of card pictures
+		if (layerGame != game || layerTheme != theme) {
+			layerGame = game;
+			layerTheme = theme;
+			invalidateLayers();
+		}
+		
+		//the board can't change while cards are being dragged, so it is drawn from an image then,
+		//and the held cards are drawn from another one on top of it
+		int held = game.holding.getHeight();
+		if (held != 0) {
+			if (!dragImagesValid) {
+				createDragImages();
+			}
+			
+			int x = recentMouseX + recentCardX;
+			int y = recentMouseY + recentCardY;
+			int height = layout.cardHeight + (held - 1) * layout.holdingYDistance;
+			drawImagePart(g, boardImage, 0, 0, layout.width, layout.height);
+			long holdingStart = System.nanoTime();
+			drawImagePart(g, holdingImage, x, y, layout.cardWidth, height);
+			frameStats.add(FrameStats.HOLDING, System.nanoTime() - holdingStart);
+			
+		} else {
+			paintBoard(g);
+		}
+		
+		animator.paint(g);
+		
+		if (hint != -1) {
+			paintHint(g);
+		}
+		
+		paintLayer(g, Solitaire.STATUS_REGION);
 		
 		if (game.isWon()) {
-			g.setColor(new Color(0xFFFF00));
-			g.setFont(new Font("Arial", Font.BOLD, 48));
-			g.drawString("YOU WON!", WINDOW_WIDTH / 2 - 131, WINDOW_HEIGHT / 2);
+			g.setColor(COLOUR_WIN);
+			g.setFont(FONT_WIN);
+			g.drawString(WIN_MESSAGE, layout.width / 2 - 131, layout.height / 2);
+		}
+		
+		if (showDiagnostics) {
+			paintDiagnostics(g);
 		}
 		
 		updateMenubar();
+		
+		if (!painted) {
+			painted = true;
+			reportStartup("first frame drawn");
+		}
+		
+		long end = System.nanoTime();
+		frameStats.add(FrameStats.PAINT, end - start);
+		if (latencyStart != 0) {
+			frameStats.add(FrameStats.INPUT_LATENCY, end - latencyStart);
+			latencyStart = 0;
+		}
+		frameStats.endFrame();
 	}
 	
-	public GUI.CardClickInfo detectMousePosition(int x, int y) {
-		int tableau = -1;
-		int cards = 0;
-		int cardX = 0;
-		int cardY = 0;
-				
-		if (y >= FOUNDATION_Y_POS && y <= FOUNDATION_Y_POS + CARD_HEIGHT) {
-			if (x >= FOUNDATION_X_POS && ((x - FOUNDATION_X_POS) % TABLEAU_DISTANCE) < CARD_WIDTH) {
-				cards = 1;
-				tableau = Solitaire.FOUNDATION_COLUMN_BASE + ((x - FOUNDATION_X_POS) / TABLEAU_DISTANCE);
-				cardX = FOUNDATION_X_POS + ((x - FOUNDATION_X_POS) / TABLEAU_DISTANCE) * TABLEAU_DISTANCE;
-				cardY = FOUNDATION_Y_POS;
+	//the diagnostics are drawn in the bottom left corner of the board
+	protected int diagnosticsX() {
+		return 8;
+	}
+	
+	protected int diagnosticsY() {
+		return layout.height - Layout.STATUS_BAR_HEIGHT - 8 - diagnosticsHeight();
+	}
+	
+	protected int diagnosticsWidth() {
+		return 470;
+	}
+	
+	protected int diagnosticsHeight() {
+		return FrameStats.COUNT * 14 + 8;
+	}
+	
+	//draws the text from updateDiagnostics over the board
+	protected void paintDiagnostics(Graphics g) {
+		int x = diagnosticsX();
+		int y = diagnosticsY();
+		g.setColor(COLOUR_DIAGNOSTICS);
+		g.fillRect(x, y, diagnosticsWidth(), diagnosticsHeight());
+		
+		g.setColor(COLOUR_WHITE);
+		g.setFont(FONT_DIAGNOSTICS);
+		for (int i = 0; i < FrameStats.COUNT; ++i) {
+			if (diagnosticsLines[i] != null) {
+				g.drawString(diagnosticsLines[i], x + 6, y + 16 + i * 14);
 			}
 		}
+	}
+	
+	//formats the diagnostics again and draws them, this is done by the timer rather than on every frame
+	//so that drawing them doesn't add to the times they show
+	protected void updateDiagnostics() {
+		for (int i = 0; i < FrameStats.COUNT; ++i) {
+			diagnosticsLines[i] = frameStats.format(i);
+		}
+		repaint(diagnosticsX(), diagnosticsY(), diagnosticsWidth(), diagnosticsHeight());
+	}
+	
+	public FrameStats getFrameStats() {
+		return frameStats;
+	}
+	
+	//writes the diagnostics to a file (see FrameStats.write)
+	public void saveDiagnostics(File file) throws IOException {
+		try (PrintStream stream = new PrintStream(new FileOutputStream(file), false, "UTF-8")) {
+			frameStats.write(stream);
+		}
+	}
+	
+	//marks the area that a column (see Solitaire) is drawn in as needing to be drawn again, so that
+	//only the piles that changed are drawn instead of the whole window
+	protected void repaintColumn(int column) {
+		if (column >= 0) {
+			//the deal pile is drawn with the cards that have been dealt from it
+			repaintRegion(Math.min(column, Solitaire.HAND_COLUMN_BASE));
+		}
+	}
+	
+	protected void repaintRegion(int region) {
+		inputDrawn();
+		repaint(layout.regionX[region], layout.regionY[region], layout.regionWidth[region], layout.regionHeight[region]);
+	}
+	
+	//marks where the held cards are drawn as needing to be drawn again (see paintHolding)
+	protected void repaintHolding() {
+		int count = game.holding.getHeight();
+		if (count != 0) {
+			inputDrawn();
+			repaint(recentMouseX + recentCardX, recentMouseY + recentCardY, layout.cardWidth, layout.cardHeight + (count - 1) * layout.holdingYDistance);
+		}
+	}
+	
+	protected void repaintStatusBar() {
+		repaintRegion(Solitaire.STATUS_REGION);
+	}
+	
+	//sets a rectangle to the area covered by the top cards of a pile, or where the pile goes if it is empty
+	protected void setToCards(Rectangle r, int pile, int count) {
+		int cards = layout.pileCount[pile];
+		if (cards == 0) {
+			r.setBounds(layout.pileX[pile], layout.pileY[pile], layout.cardWidth, layout.cardHeight);
+			return;
+		}
 		
-		int draw3Shift = game.options.draw3 ? DEAL_3_SHIFT_DIST * (game.showingPile.getHeight() - 1) : 0;
-		if (y >= DRAW_Y_POS && y <= DRAW_Y_POS + CARD_HEIGHT + game.dealPile.getHeight() / 8) {
-			if (x >= DRAW_X_POS && x <= DRAW_X_POS + CARD_WIDTH + game.dealPile.getHeight() / 4) {
-				cards = 1;
-				tableau = Solitaire.DRAW_PILE_BASE;
-				cardX = DRAW_X_POS;
-				cardY = DRAW_Y_POS;
-			}
-			if (x >= DRAW_X_POS + TABLEAU_DISTANCE + draw3Shift && x <= DRAW_X_POS + TABLEAU_DISTANCE + CARD_WIDTH + draw3Shift + game.discardPile.getHeight() / 4) {
-				cards = 1;
-				tableau = Solitaire.HAND_COLUMN_BASE;
-				cardX = DRAW_X_POS + TABLEAU_DISTANCE + draw3Shift;
-				cardY = DRAW_Y_POS;
-			}
+		int last = layout.pileFirst[pile] + cards - 1;
+		int first = last - Math.min(count, cards) + 1;
+		r.setBounds(layout.cardX[first], layout.cardY[first],
+				layout.cardX[last] - layout.cardX[first] + layout.cardWidth, layout.cardY[last] - layout.cardY[first] + layout.cardHeight);
+	}
+	
+	//works out where the outlines for the hint go, the cards to move and the pile they go on
+	protected void layOutHint() {
+		int type = Move.getType(hint);
+		if (type == Move.TYPE_FLIP_HAND) {
+			setToCards(hintFrom, Solitaire.DRAW_PILE_BASE, Layout.DEAL_CAPACITY);
+			hintTo.setBounds(hintFrom);
+		} else if (type == Move.TYPE_FLIP_COLUMN) {
+			setToCards(hintFrom, Move.getFrom(hint), 1);
+			hintTo.setBounds(hintFrom);
+		} else {
+			setToCards(hintFrom, Move.getFrom(hint), Move.getCount(hint));
+			setToCards(hintTo, Move.getTo(hint), 1);
+		}
+	}
+	
+	protected void paintHint(Graphics g) {
+		layOutHint();
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setColor(COLOUR_HINT);
+		g2.setStroke(STROKE_HINT);
+		g2.drawRect(hintFrom.x - 2, hintFrom.y - 2, hintFrom.width + 3, hintFrom.height + 3);
+		g2.drawRect(hintTo.x - 2, hintTo.y - 2, hintTo.width + 3, hintTo.height + 3);
+		g2.setStroke(STROKE_DEFAULT);
+	}
+	
+	//marks the outlines as needing to be drawn again
+	protected void repaintHint() {
+		layout.update(game);
+		layOutHint();
+		repaint(hintFrom.x - 5, hintFrom.y - 5, hintFrom.width + 10, hintFrom.height + 10);
+		repaint(hintTo.x - 5, hintTo.y - 5, hintTo.width + 10, hintTo.height + 10);
+	}
+	
+	//called with the move the hint engine found
+	protected void showHint(int move) {
+		if (move == -1) {
+			JOptionPane.showMessageDialog(this, "There are no moves that can help.", "Tip", JOptionPane.INFORMATION_MESSAGE);
+			return;
 		}
 		
-		if (y >= TABLEAU_Y_POS) {
-			if (x >= TABLEAU_X_POS && ((x - TABLEAU_X_POS) % TABLEAU_DISTANCE) < CARD_WIDTH) {
-				tableau = ((x - TABLEAU_X_POS) / TABLEAU_DISTANCE);
-				if (tableau < 7) {
-					int hidden = game.tableau[tableau].hiddenPile.getHeight();
-					
-					int cardsIn = (y - TABLEAU_Y_POS) / TABLEAU_Y_DISTANCE;
-					
-					if (cardsIn - hidden >= 0) {
-						cards = game.tableau[tableau].visiblePile.getHeight() + hidden - cardsIn;
-						if (cards < 1) {
-							cards = 1;
-							cardsIn =  game.tableau[tableau].visiblePile.getHeight() + hidden;
-						}
-						cardX = TABLEAU_X_POS + ((x - TABLEAU_X_POS) / TABLEAU_DISTANCE) * TABLEAU_DISTANCE;
-						cardY = TABLEAU_Y_POS + cardsIn * TABLEAU_Y_DISTANCE;
-						
-					} else {
-						tableau = -1;
-					}
-				} else {
-					tableau = -1;
-				}
+		hint = move;
+		repaintHint();
+	}
+	
+	//takes away the hint, and stops looking for one, as the position it was for has gone
+	protected void clearHint() {
+		hints.cancel();
+		if (hint != -1) {
+			repaintHint();
+			hint = -1;
+		}
+	}
+	
+	//adds up the versions of the regions with cards in (see Solitaire.getVersion), which changes whenever
+	//a card moves
+	protected int positionVersion() {
+		int version = 0;
+		for (int region = 0; region < Solitaire.STATUS_REGION; ++region) {
+			version += game.getVersion(region);
+		}
+		return version;
+	}
+	
+	//starts estimating the chance of winning if the position has changed since the last estimate. the
+	//old chance stays on the status bar until the new one comes in
+	protected void updateWinChance() {
+		if (game == null || game.holding.getHeight() != 0) {
+			return;
+		}
+		
+		int version = positionVersion();
+		if (game != estimatedGame || version != estimatedVersion) {
+			estimatedGame = game;
+			estimatedVersion = version;
+			probabilities.request(game);
+		}
+	}
+	
+	protected void showWinChance(int percent) {
+		if (percent != winChance) {
+			winChance = percent;
+			layerValid[Solitaire.STATUS_REGION] = false;
+			repaintStatusBar();
+		}
+	}
+	
+	//finishes the game if it only needs the cards putting up. every move is made straight away, and the
+	//cards are moved to the foundations together as one animation
+	protected void autoComplete() {
+		if (!autoComplete || !game.canAutoComplete() || !game.getFinishingMoves(finishingMoves)) {
+			return;
+		}
+		
+		animator.finish();
+		long delay = 0;
+		for (int i = 0; i < finishingMoves.size(); ++i) {
+			int move = finishingMoves.get(i);
+			if (Move.getType(move) != Move.TYPE_CARDS) {
+				game.apply(move);
+				continue;
 			}
+			
+			//each card leaves from where it is drawn just before its move
+			layout.update(game);
+			int from = Move.getFrom(move);
+			int to = Move.getTo(move);
+			int top = layout.pileFirst[from] + layout.pileCount[from] - 1;
+			int fromX = layout.cardX[top];
+			int fromY = layout.cardY[top];
+			byte code = layout.cardCode[top];
+			
+			game.apply(move);
+			animator.add(to, code, fromX, fromY, layout.pileX[to], layout.pileY[to], delay);
+			delay += AUTO_COMPLETE_STAGGER_NANOS;
 		}
 		
-		return new CardClickInfo(tableau, cards, cardX, cardY);
+		//every pile has changed, and the game has been won
+		repaint();
 	}
 	
-	void recomputeDistances(int w, int h) {
-		WINDOW_WIDTH = w;
-		WINDOW_HEIGHT = h;
-		TABLEAU_DISTANCE = WINDOW_WIDTH * 138 / 1000;
-		if (TABLEAU_DISTANCE <= CARD_WIDTH) {
-			TABLEAU_DISTANCE = CARD_WIDTH + 1;
+	//moves the cards just dealt from the deal pile to the hand, one after another
+	protected void animateDeal(int fromX, int fromY) {
+		layout.update(game);
+		int pile = Solitaire.HAND_COLUMN_BASE;
+		int dealt = Math.min(game.showingPile.getHeight(), layout.pileCount[pile]);
+		int last = layout.pileFirst[pile] + layout.pileCount[pile] - 1;
+		for (int i = 0; i < dealt; ++i) {
+			int card = last - (dealt - 1 - i);
+			animator.add(pile, layout.cardCode[card], fromX, fromY, layout.cardX[card], layout.cardY[card], i * DEAL_STAGGER_NANOS);
+		}
+	}
+	
+	//moves the top cards of a pile there from where they were drawn, the bottom one at the given position
+	//and the rest spaced out below it
+	protected void animateToPile(int pile, int count, int fromX, int fromY, int fromYDistance) {
+		layout.update(game);
+		count = Math.min(count, layout.pileCount[pile]);
+		int last = layout.pileFirst[pile] + layout.pileCount[pile] - 1;
+		for (int i = 0; i < count; ++i) {
+			int card = last - (count - 1 - i);
+			animator.add(pile, layout.cardCode[card], fromX, fromY + i * fromYDistance, layout.cardX[card], layout.cardY[card], 0);
 		}
-		DRAW_X_POS = (WINDOW_WIDTH - 6 * TABLEAU_DISTANCE - CARD_WIDTH) / 2;
-		TABLEAU_X_POS = DRAW_X_POS;
-		FOUNDATION_X_POS = TABLEAU_X_POS + 3 * TABLEAU_DISTANCE;
+	}
+	
+	//called whenever something is marked to be drawn again, so that if it was because of a mouse event,
+	//the time until the next frame is drawn is recorded
+	protected void inputDrawn() {
+		if (inputTime != 0 && latencyStart == 0) {
+			latencyStart = inputTime;
+		}
+	}
+	
+	void recomputeDistances(int w, int h) {
+		animator.finish();
+		dragImagesValid = false;
+		invalidateLayers();
+		layout.resize(w, h);
 	}
 	
 	void start(GameOptions opt) {
+		animator.finish();
+		clearHint();
 		opt.setInitialScore(game.score);
+		saveReplay();
 		game = new Solitaire(opt);
+		game.log = new ReplayLog(game);
 		opt.useSeed = false;
 		repaint();
 	}
@@ -557,35 +1066,44 @@ public class GUI extends JPanel {
 		start(opt);
 	}
 	
-	GUI() {
-		game = null;
+	protected void openDealIndex() {
+		File file = new File(DEAL_INDEX_FILE);
+		if (!file.exists()) {
+			return;
+		}
 		
-		cardImages = new BufferedImage[4][];
+		try {
+			dealIndex = new DealIndex(file);
+		} catch (IOException e) {
+			System.err.println("could not open the deal index: " + e.getMessage());
+			return;
+		}
 		
-		cardImages[Card.Suit.Club.ordinal()] = new BufferedImage[3];
-		cardImages[Card.Suit.Diamond.ordinal()] = new BufferedImage[3];
-		cardImages[Card.Suit.Spade.ordinal()] = new BufferedImage[3];
-		cardImages[Card.Suit.Heart.ordinal()] = new BufferedImage[3];
+		//counted once here, as the menu items are updated every frame
+		for (int mode = 0; mode < gradedDeals.length; ++mode) {
+			gradedDeals[mode] = dealIndex.countWinnable(mode >= 2, (mode & 1) != 0);
+		}
+	}
+	
+	//which of gradedDeals the current game's scoring and draw mode uses
+	protected int gradedMode() {
+		return (game.options.scoring == Solitaire.ScoringMode.Vegas ? 2 : 0) + (game.options.draw3 ? 1 : 0);
+	}
+	
+	//starts a winnable deal of a difficulty (see DealIndex) for the current scoring and draw mode
+	protected void startGradedDeal(int difficulty) {
+		long deal = dealIndex.pickWinnable(game.options.scoring == Solitaire.ScoringMode.Vegas, game.options.draw3, difficulty, dealRandom);
+		if (deal == -1) {
+			JOptionPane.showMessageDialog(this, "There are no deals for " + (game.options.draw3 ? "draw three" : "draw one") + (game.options.scoring == Solitaire.ScoringMode.Vegas ? " with Vegas scoring" : "") + " in " + DEAL_INDEX_FILE + ".", "Preset games", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		startFromSeed(dealIndex.getSeed(deal));
+	}
+	
+	GUI() {
+		game = null;
 		
-		try {
-			cardImages[Card.Suit.Club.ordinal()][CARD_IMAGE_JACK] = ImageIO.read(getClass().getResourceAsStream("/img/clubjack.png"));
-			cardImages[Card.Suit.Club.ordinal()][CARD_IMAGE_QUEEN] = ImageIO.read(getClass().getResourceAsStream("/img/clubqueen.png"));
-			cardImages[Card.Suit.Club.ordinal()][CARD_IMAGE_KING] = ImageIO.read(getClass().getResourceAsStream("/img/clubking.png"));
-
-			cardImages[Card.Suit.Diamond.ordinal()][CARD_IMAGE_JACK] = ImageIO.read(getClass().getResourceAsStream("/img/diamondjack.png"));
-			cardImages[Card.Suit.Diamond.ordinal()][CARD_IMAGE_QUEEN] = ImageIO.read(getClass().getResourceAsStream("/img/diamondqueen.png"));
-			cardImages[Card.Suit.Diamond.ordinal()][CARD_IMAGE_KING] = ImageIO.read(getClass().getResourceAsStream("/img/diamondking.png"));
-			
-			cardImages[Card.Suit.Spade.ordinal()][CARD_IMAGE_JACK] = ImageIO.read(getClass().getResourceAsStream("/img/spadejack.png"));
-			cardImages[Card.Suit.Spade.ordinal()][CARD_IMAGE_QUEEN] = ImageIO.read(getClass().getResourceAsStream("/img/spadequeen.png"));
-			cardImages[Card.Suit.Spade.ordinal()][CARD_IMAGE_KING] = ImageIO.read(getClass().getResourceAsStream("/img/spadeking.png"));
-			
-			cardImages[Card.Suit.Heart.ordinal()][CARD_IMAGE_JACK] = ImageIO.read(getClass().getResourceAsStream("/img/heartjack.png"));
-			cardImages[Card.Suit.Heart.ordinal()][CARD_IMAGE_QUEEN] =ImageIO.read(getClass().getResourceAsStream("/img/heartqueen.png"));
-			cardImages[Card.Suit.Heart.ordinal()][CARD_IMAGE_KING] = ImageIO.read(getClass().getResourceAsStream("/img/heartking.png"));
-
-			
-		} catch (Exception e) { ; }
+		loadCardImages();
 		
 		BufferedImage bf = new BufferedImage(2, 2, BufferedImage.TYPE_INT_BGR);
 		bf.setRGB(0, 0, 0x0000FF);
@@ -604,17 +1122,67 @@ public class GUI extends JPanel {
 		}
 		pictureCardPaint = new TexturePaint(bf, new Rectangle(0, 0, 5, 5));
 		
+		atlas = new CardAtlas(CARD_WIDTH, CARD_HEIGHT) {
+			@Override
+			protected void renderFace(Graphics g, int x, int y, Card card) {
+				renderCard(g, x, y, card);
+			}
+			
+			@Override
+			protected void renderBack(Graphics g, int x, int y) {
+				renderBackOfCard(g, x, y);
+			}
+		};
+		
+		hints = new HintEngine(HINT_MILLIS) {
+			@Override
+			protected void found(int move) {
+				showHint(move);
+			}
+		};
+		
+		probabilities = new ProbabilityEngine(WIN_SAMPLES, WIN_PLAYOUT_NODES) {
+			@Override
+			protected void estimated(double probability, int bestMove, int samples) {
+				showWinChance((int) Math.round(probability * 100));
+			}
+		};
+		
+		animator = new CardAnimator(layout) {
+			@Override
+			protected void drawCard(Graphics g, int x, int y, byte code) {
+				GUI.this.drawCard(g, x, y, Card.get(code));
+			}
+			
+			@Override
+			protected void repaintArea(int x, int y, int width, int height) {
+				repaint(x, y, width, height);
+			}
+		};
+		
 		
 		setPreferredSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
 
 		JPanel gamePanel = new JPanel();
 		gamePanel.setPreferredSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
+		gamePanel.setOpaque(false);
 		add(gamePanel);
 		
+		//only the clock on the status bar changes on its own, and only once a second (the diagnostics
+		//are also formatted again here while they are shown, and the chance of winning is checked for
+		//a new position)
 		(new Timer(200, new ActionListener() {
 		    @Override
 		    public void actionPerformed(ActionEvent e) {
-		        repaint();
+		    	if (game != null && game.getTime() != paintedTime) {
+		    		repaintStatusBar();
+		    	}
+		    	if (showDiagnostics) {
+		    		updateDiagnostics();
+		    	}
+		    	if (showWinChance) {
+		    		updateWinChance();
+		    	}
 		    }
 		})).start();
 		
@@ -625,10 +1193,11 @@ public class GUI extends JPanel {
 					return;
 				}
 				
+				//the cards are only drawn again where they were and where they are now
+				repaintHolding();
 				recentMouseX = e.getX();
 				recentMouseY = e.getY();
-				
-				repaint();
+				repaintHolding();
 			}
 
 			@Override
@@ -645,44 +1214,94 @@ public class GUI extends JPanel {
 
 			@Override
 			public void mousePressed(MouseEvent e) {
-				if (game.isWon()) {
-					return;
-				}
+				inputTime = System.nanoTime();
+				try {
+					//the cards still moving are put where they are going, so what is clicked on is what the player sees
+					animator.finish();
+					clearHint();
+					if (game.isWon()) {
+						return;
+					}
+				
+					//anything done here changes what is under (or in) the held cards
+					dragImagesValid = false;
 												
-				recentMouseX = e.getX();
-				recentMouseY = e.getY();
+					recentMouseX = e.getX();
+					recentMouseY = e.getY();
 								
-				CardClickInfo clickInfo = detectMousePosition(recentMouseX, recentMouseY);
+					//the cards are found where they were drawn
+					layout.update(game);
+					int pile = layout.pileAt(recentMouseX, recentMouseY);
 				
-				if (clickInfo.tableau == Solitaire.DRAW_PILE_BASE) {
-					game.flipHand(game.options.draw3 ? 3 : 1);
-					repaint();
+					if (pile == Solitaire.DRAW_PILE_BASE) {
+						//the cards dealt move over from the top of the deal pile
+						int dealCards = layout.pileCount[pile];
+						int top = layout.pileFirst[pile] + dealCards - 1;
+						int fromX = dealCards != 0 ? layout.cardX[top] : layout.pileX[pile];
+						int fromY = dealCards != 0 ? layout.cardY[top] : layout.pileY[pile];
+						
+						game.flipHand(game.options.draw3 ? 3 : 1);
+						repaintColumn(Solitaire.DRAW_PILE_BASE);
+						repaintStatusBar();
+						if (dealCards != 0) {
+							animateDeal(fromX, fromY);
+						}
+						autoComplete();
 				
-				} else if (clickInfo.tableau != -1 && game.holding.getHeight() == 0) {
+					} else if (pile != -1 && game.holding.getHeight() == 0) {
+						int card = layout.cardAt(pile, recentMouseX, recentMouseY);
+						if (card == -1) {
+							return;
+						}
 					
-					if (clickInfo.tableau < 7) {
-						Tableau tab = game.tableau[clickInfo.tableau];
-						if (tab.visiblePile.getHeight() == 0 && tab.hiddenPile.getHeight() != 0) {
-							game.flipColumn(clickInfo.tableau);
-							repaint();
+						if (layout.cardCode[card] == Layout.BACK) {
+							//only the last card in a column can be turned over
+							if (layout.isLastCard(pile, card)) {
+								game.flipColumn(pile);
+								repaintColumn(pile);
+								repaintStatusBar();
+								autoComplete();
+							}
 							return;
 						}
-					}
 					
-					game.hold(clickInfo.tableau, clickInfo.cards);
-					recentCardX = clickInfo.cardX - recentMouseX;
-					recentCardY = clickInfo.cardY - recentMouseY;
-					repaint();
+						game.hold(pile, layout.cardsFrom(pile, card));
+						recentCardX = layout.cardX[card] - recentMouseX;
+						recentCardY = layout.cardY[card] - recentMouseY;
+						repaintColumn(pile);
+						repaintHolding();
+					}
+				} finally {
+					inputTime = 0;
 				}
 			}
 
 			@Override
 			public void mouseReleased(MouseEvent e) {
-				CardClickInfo clickInfo = detectMousePosition(recentMouseX, recentMouseY);
-				
-				if (game.holding.getHeight() != 0) {
-					game.release(clickInfo.tableau);
-					repaint();
+				inputTime = System.nanoTime();
+				try {
+					int count = game.holding.getHeight();
+					if (count != 0) {
+						layout.update(game);
+						int pile = layout.pileAt(recentMouseX, recentMouseY);
+					
+						//the cards either go on the column they were dropped on, or back where they came from,
+						//and move there from where they were dropped
+						int destination = game.canPlace(game.holding.getBottomCode(), count, pile) ? pile : game.holdOrigin;
+						repaintHolding();
+						repaintColumn(game.holdOrigin);
+						game.release(pile);
+						repaintColumn(pile);
+						repaintStatusBar();
+						animateToPile(destination, count, recentMouseX + recentCardX, recentMouseY + recentCardY, layout.holdingYDistance);
+						autoComplete();
+					
+						if (game.isWon()) {
+							repaint();
+						}
+					}
+				} finally {
+					inputTime = 0;
 				}
 			}
 
@@ -696,11 +1315,139 @@ public class GUI extends JPanel {
 		});
 		
 		game = new Solitaire(new GameOptions());
+		game.log = new ReplayLog(game);
+		
+		String replayName = System.getProperty("solitaire.replayFile");
+		if (replayName != null) {
+			replayFile = new File(replayName);
+		}
+	}
+	
+	//starts decoding the pictures for the jacks, queens and kings, a thread for each processor
+	protected void loadCardImages() {
+		cardImages = new BufferedImage[Card.Suit.values().length][CARD_IMAGE_NAMES.length];
+		
+		//otherwise ImageIO copies each image into a temporary file before decoding it
+		ImageIO.setUseCache(false);
+		
+		ExecutorService loader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "card image loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		for (Card.Suit suit : Card.Suit.values()) {
+			for (String picture : CARD_IMAGE_NAMES) {
+				final String name = "/img/" + suit.name().toLowerCase(Locale.ROOT) + picture + ".png";
+				FutureTask<BufferedImage> load = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+					@Override
+					public BufferedImage call() throws Exception {
+						try (InputStream stream = GUI.class.getResourceAsStream(name)) {
+							return ImageIO.read(stream);
+						}
+					}
+				}) {
+					@Override
+					protected void done() {
+						//the next frame puts it in the atlas
+						repaint();
+					}
+				};
+				cardImageLoads.add(load);
+				loader.execute(load);
+			}
+		}
+		
+		loader.shutdown();
+		cardImagesPending = true;
+	}
+	
+	//moves any pictures that have finished loading into cardImages, and has the atlas drawn again if there
+	//were any. this is called before drawing each frame, so the pictures are only ever used by one thread
+	protected void installCardImages() {
+		if (!cardImagesPending) {
+			return;
+		}
+		
+		cardImagesPending = false;
+		for (int i = 0; i < cardImageLoads.size(); ++i) {
+			Future<BufferedImage> load = cardImageLoads.get(i);
+			int suit = i / CARD_IMAGE_NAMES.length;
+			int picture = i % CARD_IMAGE_NAMES.length;
+			
+			if (cardImages[suit][picture] != null) {
+				continue;
+			}
+			if (!load.isDone()) {
+				cardImagesPending = true;
+				continue;
+			}
+			
+			try {
+				cardImages[suit][picture] = load.get();
+				++theme;
+			} catch (InterruptedException | ExecutionException e) {
+				//it is left as a placeholder
+			}
+		}
+		
+		if (!cardImagesPending) {
+			reportStartup("card pictures loaded");
+		}
+	}
+	
+	//waits for every picture to load, for drawing somewhere other than the window (eg. the benchmarks)
+	public void waitForCardImages() {
+		for (Future<BufferedImage> load : cardImageLoads) {
+			try {
+				load.get();
+			} catch (InterruptedException | ExecutionException e) { ; }
+		}
+		installCardImages();
+	}
+	
+	protected void reportStartup(String what) {
+		if (reportStartup) {
+			System.out.printf("%s %d ms after starting%n", what, ManagementFactory.getRuntimeMXBean().getUptime());
+		}
+	}
+	
+	//ends the replay log of the current game and saves it, if there is a file to save it to
+	public void saveReplay() {
+		if (game == null || game.log == null || game.log.isFinished()) {
+			return;
+		}
+		
+		game.log.finish(game);
+		if (replayFile == null || game.firstMoveTimestamp == 0) {
+			return;
+		}
+		
+		try (OutputStream stream = new FileOutputStream(replayFile, true)) {
+			game.log.writeTo(stream);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	public void updateMenubar() {
+		//there are no menus when drawing somewhere other than the window (eg. the benchmarks)
+		if (undoBtn == null) {
+			return;
+		}
+		
 		undoBtn.setEnabled(game.canUndo());
 		cumulativeBtn.setEnabled(game.options.scoring == Solitaire.ScoringMode.Vegas);
+		
+		//a deal that can be won with standard scoring may not be with Vegas scoring, so only the deals
+		//surveyed for the current mode are offered
+		boolean graded = dealIndex != null && gradedDeals[gradedMode()] != 0;
+		for (JMenuItem gradedBtn : gradedBtns) {
+			gradedBtn.setEnabled(graded);
+		}
 	}
 	
 	public void createOptionsDialog(JFrame frame) {
@@ -833,6 +1580,8 @@ public class GUI extends JPanel {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				if (game.canUndo() && !game.isWon()) {
+					animator.finish();
+					clearHint();
 					game.undo();
 					repaint();
 				}
@@ -915,12 +1664,13 @@ public class GUI extends JPanel {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				if (game.options.timed) {
-					game.options.timed = false;
+					game.setTimed(false);
 					timedBtn.setText("Enable timed game");
 				} else {
-					game.options.timed = true;
+					game.setTimed(true);
 					timedBtn.setText("Disable timed game");
 				}
+				repaintStatusBar();
 			}
 		});
 		gameMenu.add(timedBtn);
@@ -939,6 +1689,34 @@ public class GUI extends JPanel {
 			}
 		});
 		gameMenu.add(cumulativeBtn);
+		
+		autoCompleteBtn = new JMenuItem("Disable auto-complete");
+		autoCompleteBtn.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				autoComplete = !autoComplete;
+				autoCompleteBtn.setText(autoComplete ? "Disable auto-complete" : "Enable auto-complete");
+				autoComplete();
+			}
+		});
+		gameMenu.add(autoCompleteBtn);
+		
+		winChanceBtn = new JMenuItem("Show win chance");
+		winChanceBtn.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				showWinChance = !showWinChance;
+				winChanceBtn.setText(showWinChance ? "Hide win chance" : "Show win chance");
+				if (showWinChance) {
+					updateWinChance();
+				} else {
+					probabilities.cancel();
+					estimatedGame = null;
+					showWinChance(-1);
+				}
+			}
+		});
+		gameMenu.add(winChanceBtn);
 	
 		
 		gameMenu.add(new JSeparator());
@@ -961,6 +1739,21 @@ public class GUI extends JPanel {
 			presetMenu.add(preset);
 		}
 		
+		openDealIndex();
+		presetMenu.add(new JSeparator());
+		for (int i = 0; i < DealIndex.DIFFICULTIES; ++i) {
+			final int difficulty = i;
+			gradedBtns[i] = new JMenuItem(DIFFICULTY_NAMES[i] + " winnable deal");
+			gradedBtns[i].setEnabled(dealIndex != null);
+			gradedBtns[i].addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					startGradedDeal(difficulty);
+				}
+			});
+			presetMenu.add(gradedBtns[i]);
+		}
+		
 		
 		
 		
@@ -971,6 +1764,8 @@ public class GUI extends JPanel {
 		closeBtn.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
+				//disposing of the window doesn't send windowClosing, which saves the replay otherwise
+				saveReplay();
 				frame.dispose();
 			}
 		});
@@ -990,13 +1785,54 @@ public class GUI extends JPanel {
 		helpMenu.add(howToBtn);
 		
 		JMenuItem tipBtn = new JMenuItem("Tip");
+		tipBtn.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, 0));
 		tipBtn.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
+				if (!game.isWon() && game.holding.getHeight() == 0) {
+					animator.finish();
+					clearHint();
+					hints.request(game);
+				}
+			}
+		});
+		helpMenu.add(tipBtn);
+		
+		
+		helpMenu.add(new JSeparator());
+		
+		diagnosticsBtn = new JMenuItem("Show diagnostics");
+		diagnosticsBtn.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+		diagnosticsBtn.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				showDiagnostics = !showDiagnostics;
+				diagnosticsBtn.setText(showDiagnostics ? "Hide diagnostics" : "Show diagnostics");
+				if (showDiagnostics) {
+					updateDiagnostics();
+				} else {
+					repaint(diagnosticsX(), diagnosticsY(), diagnosticsWidth(), diagnosticsHeight());
+				}
 			}
 		});
-		//helpMenu.add(tipBtn);
+		helpMenu.add(diagnosticsBtn);
 		
+		JMenuItem saveDiagnosticsBtn = new JMenuItem("Save diagnostics...");
+		saveDiagnosticsBtn.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser();
+				chooser.setSelectedFile(new File("solitaire-diagnostics.csv"));
+				if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					try {
+						saveDiagnostics(chooser.getSelectedFile());
+					} catch (IOException ex) {
+						JOptionPane.showMessageDialog(frame, ex.getMessage(), "Save diagnostics", JOptionPane.ERROR_MESSAGE);
+					}
+				}
+			}
+		});
+		helpMenu.add(saveDiagnosticsBtn);
 		
 		helpMenu.add(new JSeparator());
 
@@ -1031,17 +1867,38 @@ public class GUI extends JPanel {
 		JFrame frame = new JFrame("Solitaire");
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		
-		try {
-			ImageIcon icon = (ImageIcon) FileSystemView.getFileSystemView().getSystemIcon(new File("solitaire.exe"));
-			frame.setIconImage(icon.getImage());
-		} catch (Exception e) { ; }
-		
-		GUI gui = new GUI();
+		final GUI gui = new GUI();
 		gui.addMenus(frame);
+		
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				gui.saveReplay();
+			}
+		});
 
 		frame.setContentPane(gui);
 		frame.pack();
 		frame.setVisible(true);
+		
+		//looking up the icon can be slow, so it is done in the background once the window is showing
+		Thread iconLoader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					ImageIcon icon = (ImageIcon) FileSystemView.getFileSystemView().getSystemIcon(new File("solitaire.exe"));
+					final Image image = icon.getImage();
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							frame.setIconImage(image);
+						}
+					});
+				} catch (Exception e) { ; }
+			}
+		}, "icon loader");
+		iconLoader.setDaemon(true);
+		iconLoader.start();
 	}
 	
 	public static void main(String[] args) {
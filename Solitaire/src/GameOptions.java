@@ -0,0 +1,56 @@
+
+/*
+ *	Solitaire - GameOptions.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+class GameOptions {
+	Solitaire.ScoringMode scoring;
+	boolean timed;
+	boolean draw3;
+	boolean cumulative;
+	
+	int initialScore;
+	int initialSeed;
+	boolean useSeed;
+	
+	int undoLimit;									//maximum number of moves that can be undone, or 0 for no limit
+	
+	GameOptions() {
+		scoring = Solitaire.ScoringMode.Standard;
+		timed = true;
+		draw3 = true;
+		cumulative = false;
+		
+		initialScore = 0;
+		initialSeed = 0;
+		useSeed = false;
+		
+		undoLimit = 0;
+	}
+	
+	//copy constructor, used when a game needs options that won't be changed by the menus
+	GameOptions(GameOptions other) {
+		scoring = other.scoring;
+		timed = other.timed;
+		draw3 = other.draw3;
+		cumulative = other.cumulative;
+		
+		initialScore = other.initialScore;
+		initialSeed = other.initialSeed;
+		useSeed = other.useSeed;
+		
+		undoLimit = other.undoLimit;
+	}
+	
+	void setInitialScore(int currentScore) {
+		if (scoring == Solitaire.ScoringMode.Vegas) {
+			initialScore = cumulative ? currentScore - 52 : -52;
+		} else {
+			initialScore = 0;
+		}
+	}
+}
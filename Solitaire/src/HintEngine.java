@@ -0,0 +1,89 @@
+
+/*
+ *	Solitaire - HintEngine.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+//finds a move to suggest to the player. the game is copied when the hint is asked for, and a Solver searches
+//from the copy on a background thread for up to a set time, so the window never waits for it. the first move
+//of a solution is suggested if one is found in time, or else the move the search would have tried first.
+//every request (and cancel) starts a new generation, and a search from an older one gives up at its next
+//position and never reports back, so the player never sees a hint for a position that has gone
+public abstract class HintEngine {
+
+	protected ExecutorService executor;
+	protected Solver solver;						//only used on the search thread
+	protected volatile int generation;
+	protected volatile int searching;				//the generation being searched for
+
+	public HintEngine(long budgetMillis) {
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "hint search");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+
+		solver = new Solver(0, budgetMillis) {
+			@Override
+			protected boolean outOfBudget() {
+				return searching != generation || super.outOfBudget();
+			}
+		};
+	}
+
+	//called on the event dispatch thread with the move to suggest (see Move), or -1 if no move helps
+	protected abstract void found(int move);
+
+	//starts looking for a move from the game's current position, this must be called on the event
+	//dispatch thread, and found() is called on it later
+	public void request(Solitaire game) {
+		final int requested = ++generation;
+		final Solitaire position = Solver.copyForSearch(game);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				//a newer request is already waiting
+				if (requested != generation) {
+					return;
+				}
+
+				searching = requested;
+				final int move = search(position);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (requested == generation) {
+							found(move);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	//stops any search that is going, and makes sure it doesn't report back
+	public void cancel() {
+		++generation;
+	}
+
+	protected int search(Solitaire position) {
+		if (solver.solve(position) == Solver.Result.Winnable && solver.getSolutionLength() != 0) {
+			return solver.getSolutionMove(0);
+		}
+		return solver.getPreferredMove(position);
+	}
+}
@@ -0,0 +1,340 @@
+
+/*
+ *	Solitaire - Layout.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+//where everything on the board goes, shared by the drawing code and the mouse handling so that they always
+//agree. where each pile goes is worked out when the window changes size, and where each card goes is worked
+//out when its pile changes (see Solitaire.getVersion), so nothing is worked out while drawing or clicking.
+//every card that is drawn has an entry in the flat arrays below. each pile (numbered as in Solitaire, with
+//DRAW_PILE_BASE for the deal pile) has its own fixed range of entries, in the order the cards are drawn
+public class Layout {
+
+	//the positions for a window of GUI.WINDOW_WIDTH by GUI.WINDOW_HEIGHT, which are scaled with the window
+	//(apart from the status bar, as its text stays the same size)
+	static final int DRAW_Y_POS = 20;
+	static final int TABLEAU_Y_POS = 200;
+	static final int FOUNDATION_Y_POS = DRAW_Y_POS;
+	static final int TABLEAU_Y_DISTANCE = 22;
+	static final int SHOWING_X_DISTANCE = 28;		//between the cards dealt together in draw 3
+	static final int HOLDING_Y_DISTANCE = 15;
+	static final int STATUS_BAR_HEIGHT = 27;
+
+	static final double MIN_SCALE = 0.5;
+
+	static final int PILE_COUNT = Solitaire.DRAW_PILE_BASE + 1;
+	static final byte BACK = -1;					//the code for a card that is drawn face down
+
+	//the most cards that each kind of pile draws: a column's hidden cards with a king to ace run on them, the
+	//top card of a foundation, every card left in the hand, and a back for every 8 cards in the deal pile
+	static final int HAND_SIZE = 52 - 7 * 8 / 2;
+	static final int TABLEAU_CAPACITY = 6 + Card.RANK_KING;
+	static final int FOUNDATION_CAPACITY = 1;
+	static final int HAND_CAPACITY = HAND_SIZE;
+	static final int DEAL_CAPACITY = HAND_SIZE / 8 + 1;
+
+	protected int width;
+	protected int height;
+	protected double scale;							//the size of everything, compared to the normal window size
+	protected int cardWidth;
+	protected int cardHeight;
+	protected int tableauDistance;					//from the left of one column to the next
+	protected int tableauY;							//the top of the columns
+	protected int tableauYDistance;					//from the top of one card in a column to the next
+	protected int showingXDistance;
+	protected int holdingYDistance;
+
+	//the top left of each pile's place on the board, where it is drawn from when it is empty
+	protected int pileX[] = new int[PILE_COUNT];
+	protected int pileY[] = new int[PILE_COUNT];
+
+	//the area around each pile in the top row that counts as being on it, for clicking on and dropping cards on
+	//(anywhere below the top of a column counts as being on that column)
+	protected int hitX[] = new int[PILE_COUNT];
+	protected int hitY[] = new int[PILE_COUNT];
+	protected int hitWidth[] = new int[PILE_COUNT];
+	protected int hitHeight[] = new int[PILE_COUNT];
+
+	//the column of piles that each x position is over, or -1 between them
+	protected int columnAtX[] = new int[0];
+
+	//the area each region (see Solitaire.getVersion) is drawn in
+	protected int regionX[] = new int[Solitaire.REGION_COUNT];
+	protected int regionY[] = new int[Solitaire.REGION_COUNT];
+	protected int regionWidth[] = new int[Solitaire.REGION_COUNT];
+	protected int regionHeight[] = new int[Solitaire.REGION_COUNT];
+
+	//every card drawn, the ones for a pile are pileFirst[pile] up to pileFirst[pile] + pileCount[pile]
+	protected int pileFirst[] = new int[PILE_COUNT];
+	protected int pileCount[] = new int[PILE_COUNT];
+	protected int cardX[];
+	protected int cardY[];
+	protected byte cardCode[];						//see Card.encode, or BACK
+
+	//the number of cards at the top of each pile that are left out, as they are still moving there (see CardAnimator)
+	protected int flying[] = new int[PILE_COUNT];
+	protected boolean regionValid[] = new boolean[Solitaire.REGION_COUNT];
+
+	//what the cards were last laid out for
+	protected Solitaire laidOutGame;
+	protected int laidOutVersions[] = new int[Solitaire.REGION_COUNT];
+	protected boolean valid;
+
+	public Layout(int _width, int _height) {
+		int size = 0;
+		for (int pile = 0; pile < PILE_COUNT; ++pile) {
+			pileFirst[pile] = size;
+			size += pile < Solitaire.FOUNDATION_COLUMN_BASE ? TABLEAU_CAPACITY :
+					pile < Solitaire.HAND_COLUMN_BASE ? FOUNDATION_CAPACITY :
+					pile == Solitaire.HAND_COLUMN_BASE ? HAND_CAPACITY : DEAL_CAPACITY;
+		}
+		cardX = new int[size];
+		cardY = new int[size];
+		cardCode = new byte[size];
+
+		resize(_width, _height);
+	}
+
+	//works out where the piles go in a window of this size
+	public void resize(int _width, int _height) {
+		width = _width;
+		height = _height;
+		valid = false;
+
+		//the cards are made to fit in whichever way the window is smaller than normal, or grow with it
+		//in whichever way it is less bigger than normal
+		scale = Math.max(Math.min(width / (double) GUI.WINDOW_WIDTH, height / (double) GUI.WINDOW_HEIGHT), MIN_SCALE);
+		cardWidth = scaled(GUI.CARD_WIDTH);
+		cardHeight = scaled(GUI.CARD_HEIGHT);
+		tableauYDistance = scaled(TABLEAU_Y_DISTANCE);
+		showingXDistance = scaled(SHOWING_X_DISTANCE);
+		holdingYDistance = scaled(HOLDING_Y_DISTANCE);
+		int drawY = scaled(DRAW_Y_POS);
+		int foundationY = scaled(FOUNDATION_Y_POS);
+		tableauY = scaled(TABLEAU_Y_POS);
+
+		tableauDistance = width * 138 / 1000;
+		if (tableauDistance <= cardWidth) {
+			tableauDistance = cardWidth + 1;
+		}
+		int left = (width - 6 * tableauDistance - cardWidth) / 2;
+
+		//the foundations are over the last four columns, and the deal pile and the hand are over the first two
+		for (int t = 0; t < Solitaire.FOUNDATION_COLUMN_BASE; ++t) {
+			pileX[t] = left + t * tableauDistance;
+			pileY[t] = tableauY;
+			setRegion(t, pileX[t], tableauY, cardWidth + 1, height - STATUS_BAR_HEIGHT - tableauY);
+		}
+		for (int f = Solitaire.FOUNDATION_COLUMN_BASE; f < Solitaire.HAND_COLUMN_BASE; ++f) {
+			pileX[f] = pileX[f - Solitaire.FOUNDATION_COLUMN_BASE + 3];
+			pileY[f] = foundationY;
+			setHitArea(f, pileX[f], foundationY, cardWidth, cardHeight + 1);
+			setRegion(f, pileX[f], foundationY, cardWidth + 1, cardHeight + 1);
+		}
+		pileX[Solitaire.DRAW_PILE_BASE] = left;
+		pileY[Solitaire.DRAW_PILE_BASE] = drawY;
+		pileX[Solitaire.HAND_COLUMN_BASE] = left + tableauDistance;
+		pileY[Solitaire.HAND_COLUMN_BASE] = drawY;
+
+		//the deal pile and the cards dealt from it are drawn in one region, and the status bar in another
+		setRegion(Solitaire.HAND_COLUMN_BASE, 0, 0, pileX[Solitaire.FOUNDATION_COLUMN_BASE], tableauY);
+		setRegion(Solitaire.STATUS_REGION, 0, height - STATUS_BAR_HEIGHT, width, STATUS_BAR_HEIGHT);
+
+		if (columnAtX.length != width) {
+			columnAtX = new int[Math.max(width, 0)];
+		}
+		for (int x = 0; x < width; ++x) {
+			int column = x < left ? -1 : (x - left) / tableauDistance;
+			columnAtX[x] = column < Solitaire.FOUNDATION_COLUMN_BASE && x >= left && (x - left) % tableauDistance < cardWidth ? column : -1;
+		}
+	}
+
+	protected int scaled(int size) {
+		return (int) Math.round(size * scale);
+	}
+
+	protected void setHitArea(int pile, int x, int y, int w, int h) {
+		hitX[pile] = x;
+		hitY[pile] = y;
+		hitWidth[pile] = w;
+		hitHeight[pile] = h;
+	}
+
+	protected void setRegion(int region, int x, int y, int w, int h) {
+		regionX[region] = x;
+		regionY[region] = y;
+		regionWidth[region] = w;
+		regionHeight[region] = h;
+	}
+
+	//brings the cards up to date with the game, only laying out again the regions that have changed
+	public void update(Solitaire game) {
+		boolean all = !valid || game != laidOutGame;
+		for (int region = 0; region <= Solitaire.HAND_COLUMN_BASE; ++region) {
+			int version = game.getVersion(region);
+			if (all || version != laidOutVersions[region] || !regionValid[region]) {
+				layOut(game, region);
+				laidOutVersions[region] = version;
+				regionValid[region] = true;
+			}
+		}
+		laidOutGame = game;
+		valid = true;
+	}
+
+	//leaves the top cards of a pile out of the layout (or puts them back), the pile is laid out again on the next update
+	public void setFlying(int pile, int count) {
+		flying[pile] = count;
+		regionValid[Math.min(pile, Solitaire.HAND_COLUMN_BASE)] = false;
+	}
+
+	protected void layOut(Solitaire game, int region) {
+		if (region == Solitaire.HAND_COLUMN_BASE) {
+			layOutDealPile(game);
+			layOutHand(game);
+
+		} else if (region >= Solitaire.FOUNDATION_COLUMN_BASE) {
+			FoundationPile foundation = game.foundations[region - Solitaire.FOUNDATION_COLUMN_BASE];
+			pileCount[region] = 0;
+			if (foundation.getHeight() > flying[region]) {
+				addCard(region, pileX[region], pileY[region], foundation.getCode(flying[region]));
+			}
+
+		} else {
+			Tableau tableau = game.tableau[region];
+			pileCount[region] = 0;
+			int y = pileY[region];
+			for (int i = 0; i < tableau.hiddenPile.getHeight(); ++i) {
+				addCard(region, pileX[region], y, BACK);
+				y += tableauYDistance;
+			}
+			for (int depth = tableau.visiblePile.getHeight() - 1; depth >= flying[region]; --depth) {
+				addCard(region, pileX[region], y, tableau.visiblePile.getCode(depth));
+				y += tableauYDistance;
+			}
+		}
+	}
+
+	//a back for every 8 cards, each a little further down and to the right, so the pile looks thicker
+	protected void layOutDealPile(Solitaire game) {
+		int pile = Solitaire.DRAW_PILE_BASE;
+		int dealCards = game.dealPile.getHeight();
+		pileCount[pile] = 0;
+		if (dealCards != 0) {
+			for (int i = 0; i < dealCards / 8 + 1; ++i) {
+				addCard(pile, pileX[pile] + 2 * i, pileY[pile] + i, BACK);
+			}
+		}
+		//it can still be clicked on when it is empty, to turn the hand back over
+		setHitAreaToCards(pile, cardWidth, cardHeight);
+	}
+
+	//the cards dealt before the latest ones are stacked up the same way as the deal pile, and the latest
+	//ones are spread out to the right of them
+	protected void layOutHand(Solitaire game) {
+		int pile = Solitaire.HAND_COLUMN_BASE;
+		int x = pileX[pile];
+		int y = pileY[pile];
+		pileCount[pile] = 0;
+
+		int i = 0;
+		for (int depth = game.discardPile.getHeight() - 1; depth >= 0; --depth) {
+			addCard(pile, x, y, game.discardPile.getCode(depth));
+			if (i % 8 == 7) {
+				x += 2;
+				y += 1;
+			}
+			++i;
+		}
+		for (int depth = game.showingPile.getHeight() - 1; depth >= flying[pile]; --depth) {
+			addCard(pile, x, y, game.showingPile.getCode(depth));
+			x += showingXDistance;
+		}
+		setHitAreaToCards(pile, 0, 0);
+	}
+
+	protected void addCard(int pile, int x, int y, byte code) {
+		int card = pileFirst[pile] + pileCount[pile]++;
+		cardX[card] = x;
+		cardY[card] = y;
+		cardCode[card] = code;
+	}
+
+	//makes the hit area of a pile cover all of its cards, or be the given size if it has none
+	protected void setHitAreaToCards(int pile, int emptyWidth, int emptyHeight) {
+		int first = pileFirst[pile];
+		int last = first + pileCount[pile] - 1;
+		if (pileCount[pile] == 0) {
+			setHitArea(pile, pileX[pile], pileY[pile], emptyWidth, emptyHeight);
+		} else {
+			//the cards only ever go down and to the right
+			setHitArea(pile, cardX[first], cardY[first], cardX[last] - cardX[first] + cardWidth, cardY[last] - cardY[first] + cardHeight);
+		}
+	}
+
+	protected boolean inHitArea(int pile, int x, int y) {
+		return x >= hitX[pile] && x < hitX[pile] + hitWidth[pile] && y >= hitY[pile] && y < hitY[pile] + hitHeight[pile];
+	}
+
+	//the pile at a point, for clicking on or dropping cards on, or -1 if there isn't one there
+	public int pileAt(int x, int y) {
+		if (x < 0 || x >= width || y < 0) {
+			return -1;
+		}
+
+		int column = columnAtX[x];
+		if (y >= tableauY) {
+			return column;
+		}
+
+		if (inHitArea(Solitaire.DRAW_PILE_BASE, x, y)) {
+			return Solitaire.DRAW_PILE_BASE;
+		}
+		if (inHitArea(Solitaire.HAND_COLUMN_BASE, x, y)) {
+			return Solitaire.HAND_COLUMN_BASE;
+		}
+		if (column >= 3) {
+			int foundation = Solitaire.FOUNDATION_COLUMN_BASE + column - 3;
+			if (inHitArea(foundation, x, y)) {
+				return foundation;
+			}
+		}
+		return -1;
+	}
+
+	//the card of a pile drawn at a point, or -1 if the point isn't on one of its cards. only the top card of
+	//the hand and the foundations can be picked up, so they don't look at the cards underneath
+	public int cardAt(int pile, int x, int y) {
+		if (pile < 0 || pileCount[pile] == 0) {
+			return -1;
+		}
+
+		int first = pileFirst[pile];
+		int card = first + pileCount[pile] - 1;
+		if (pile < Solitaire.FOUNDATION_COLUMN_BASE) {
+			//the cards in a column are evenly spaced, so the card at the point can be found directly
+			if (y < cardY[first]) {
+				return -1;
+			}
+			card = Math.min(first + (y - cardY[first]) / tableauYDistance, card);
+		}
+
+		if (x < cardX[card] || x >= cardX[card] + cardWidth || y < cardY[card] || y >= cardY[card] + cardHeight) {
+			return -1;
+		}
+		return card;
+	}
+
+	//the number of cards picked up by clicking on a card, which is it and everything on top of it
+	public int cardsFrom(int pile, int card) {
+		return pile < Solitaire.FOUNDATION_COLUMN_BASE ? pileFirst[pile] + pileCount[pile] - card : 1;
+	}
+
+	public boolean isLastCard(int pile, int card) {
+		return card == pileFirst[pile] + pileCount[pile] - 1;
+	}
+}
@@ -0,0 +1,83 @@
+
+/*
+ *	Solitaire - Move.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+//moves are packed into an int so that lists of them can be made without creating any objects,
+//this class just has the methods for creating and reading them
+//the pile indices are the same as the ones used by Solitaire.hold() and Solitaire.release()
+public final class Move {
+
+	static final int TYPE_CARDS = 0;			//move cards from one pile to another
+	static final int TYPE_FLIP_HAND = 1;		//deal cards from the hand (or reset it)
+	static final int TYPE_FLIP_COLUMN = 2;		//turn over the top hidden card of a tableau
+
+	static final int TYPE_MASK = 0x3;
+	static final int FROM_SHIFT = 2;
+	static final int TO_SHIFT = 6;
+	static final int COLUMN_MASK = 0xF;
+	static final int COUNT_SHIFT = 10;
+	static final int COUNT_MASK = 0x3F;
+	
+	//no move will ever be encoded as this
+	static final int NONE = -1;
+
+	private Move() {
+		
+	}
+
+	public static int cards(int from, int to, int count) {
+		return TYPE_CARDS | (from << FROM_SHIFT) | (to << TO_SHIFT) | (count << COUNT_SHIFT);
+	}
+
+	public static int flipHand() {
+		return TYPE_FLIP_HAND;
+	}
+
+	public static int flipColumn(int column) {
+		return TYPE_FLIP_COLUMN | (column << FROM_SHIFT);
+	}
+
+	public static int getType(int move) {
+		return move & TYPE_MASK;
+	}
+
+	public static int getFrom(int move) {
+		return (move >> FROM_SHIFT) & COLUMN_MASK;
+	}
+
+	public static int getTo(int move) {
+		return (move >> TO_SHIFT) & COLUMN_MASK;
+	}
+
+	public static int getCount(int move) {
+		return (move >> COUNT_SHIFT) & COUNT_MASK;
+	}
+	
+	protected static String describePile(int column) {
+		if (column >= Solitaire.HAND_COLUMN_BASE) {
+			return "hand";
+		} else if (column >= Solitaire.FOUNDATION_COLUMN_BASE) {
+			return String.format("foundation %d", column - Solitaire.FOUNDATION_COLUMN_BASE + 1);
+		} else {
+			return String.format("tableau %d", column + 1);
+		}
+	}
+
+	//a human readable version of the move, eg. for printing out solutions
+	public static String toString(int move) {
+		int type = getType(move);
+		
+		if (type == TYPE_FLIP_HAND) {
+			return "flip hand";
+		} else if (type == TYPE_FLIP_COLUMN) {
+			return "turn over " + describePile(getFrom(move));
+		} else {
+			return String.format("%d from %s to %s", getCount(move), describePile(getFrom(move)), describePile(getTo(move)));
+		}
+	}
+}
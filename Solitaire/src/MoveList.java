@@ -0,0 +1,54 @@
+
+/*
+ *	Solitaire - MoveList.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+//a reusable list of moves (see Move), so that moves can be generated over and over again
+//without creating any objects
+public class MoveList {
+	
+	//there are never anywhere near this many legal moves in a position, but it will grow if needed
+	static final int INITIAL_CAPACITY = 128;
+	
+	protected int moves[];
+	protected int size;
+	
+	public MoveList() {
+		moves = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	public void add(int move) {
+		if (size == moves.length) {
+			int newMoves[] = new int[moves.length * 2];
+			System.arraycopy(moves, 0, newMoves, 0, size);
+			moves = newMoves;
+		}
+		moves[size++] = move;
+	}
+	
+	public int get(int index) {
+		return moves[index];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean contains(int move) {
+		for (int i = 0; i < size; ++i) {
+			if (moves[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,256 @@
+
+/*
+ *	Solitaire - ParallelSolver.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+//a Solver that searches on many threads at once. each thread does the same depth first search
+//as Solver, but whenever the pool runs short of work it hands the moves it hasn't tried yet to
+//other threads as new tasks. all of the threads share one table of searched positions, and the
+//first one to win the game stops the rest
+public class ParallelSolver extends Solver {
+
+	//a search hands out work when there are fewer than this many tasks waiting
+	static final int SPLIT_THRESHOLD = 2;
+
+	protected ForkJoinPool pool;
+	protected ConcurrentTranspositionTable sharedTable;
+
+	//state shared by all of the tasks of the current search
+	protected AtomicLong totalNodes;
+	protected AtomicReference<int[]> winner;		//the full solution found by the first task to win
+	protected volatile boolean stopped;				//set once the game is won or the budget runs out
+	protected volatile boolean budgetExceeded;
+
+	//each thread reuses one Worker for every task it runs
+	protected ThreadLocal<Worker> workers;
+
+	public ParallelSolver(long maxNodes, long maxMillis, int threads) {
+		super(maxNodes, maxMillis);
+		pool = new ForkJoinPool(threads);
+		sharedTable = new ConcurrentTranspositionTable(threads * 64, 1 << 20);
+		totalNodes = new AtomicLong();
+		winner = new AtomicReference<int[]>();
+
+		workers = new ThreadLocal<Worker>() {
+			@Override
+			protected Worker initialValue() {
+				return new Worker(ParallelSolver.this);
+			}
+		};
+	}
+
+	public ParallelSolver(long maxNodes, long maxMillis) {
+		this(maxNodes, maxMillis, Runtime.getRuntime().availableProcessors());
+	}
+
+	public int getThreads() {
+		return pool.getParallelism();
+	}
+
+	//runs one of the two searches (see Solver.search) across the pool, the node limit covers
+	//the nodes searched by every thread
+	@Override
+	protected Result searchPhase() {
+		sharedTable.clear();
+		sharedTable.add(getPositionKey());
+		totalNodes.set(nodes);
+		winner.set(null);
+		stopped = false;
+		budgetExceeded = false;
+
+		//the tasks change their own copies of the game, so the start position is left alone
+		pool.invoke(new SearchTask(this, null, copyForTask(game), new int[0]));
+		nodes = totalNodes.get();
+
+		int moves[] = winner.get();
+		if (moves != null) {
+			if (solution.length < moves.length) {
+				solution = new int[moves.length];
+			}
+			System.arraycopy(moves, 0, solution, 0, moves.length);
+			solutionLength = moves.length;
+			return Result.Winnable;
+		}
+
+		return budgetExceeded ? Result.Unknown : Result.Unwinnable;
+	}
+
+	//a copy of a position for a new task, which never needs to take back the moves before it
+	static Solitaire copyForTask(Solitaire position) {
+		Solitaire copy = new Solitaire(position);
+		copy.journal = new UndoJournal(0);
+		return copy;
+	}
+
+	//called by a task that has won the game, only the first solution is kept
+	protected void foundSolution(int moves[]) {
+		winner.compareAndSet(null, moves);
+		stopped = true;
+	}
+
+	//searches from a position on whichever thread picks it up, and finishes once it and
+	//every task it handed work out to have finished
+	static class SearchTask extends CountedCompleter<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		protected ParallelSolver owner;
+		protected Solitaire position;
+		protected int prefix[];			//the plain moves from the start of the search to the position
+
+		public SearchTask(ParallelSolver _owner, SearchTask parent, Solitaire _position, int _prefix[]) {
+			super(parent);
+			owner = _owner;
+			position = _position;
+			prefix = _prefix;
+		}
+
+		@Override
+		public void compute() {
+			//tasks still waiting when the search stops have nothing to do
+			if (!owner.stopped) {
+				owner.workers.get().run(this);
+			}
+			tryComplete();
+		}
+	}
+
+	//the search done by one thread, using the shared table and budget instead of its own
+	static class Worker extends Solver {
+
+		protected ParallelSolver owner;
+		protected SearchTask task;
+		protected long reportedNodes;		//nodes already added to the shared count
+
+		public Worker(ParallelSolver _owner) {
+			super(0, 0);
+			owner = _owner;
+		}
+
+		protected void run(SearchTask _task) {
+			task = _task;
+			game = task.position;
+			pruning = owner.pruning;
+			nodes = 0;
+			reportedNodes = 0;
+
+			if (game.isWon()) {
+				owner.foundSolution(task.prefix);
+
+			} else if (searchFrom() == Result.Winnable) {
+				int moves[] = new int[task.prefix.length + solutionLength];
+				System.arraycopy(task.prefix, 0, moves, 0, task.prefix.length);
+				System.arraycopy(solution, 0, moves, task.prefix.length, solutionLength);
+				owner.foundSolution(moves);
+			}
+
+			owner.totalNodes.addAndGet(nodes - reportedNodes);
+
+			//don't keep the position alive until the whole search finishes
+			task.position = null;
+			game = null;
+		}
+
+		@Override
+		protected boolean addPosition(long key) {
+			return owner.sharedTable.add(key);
+		}
+
+		@Override
+		protected boolean outOfBudget() {
+			if (owner.stopped) {
+				return true;
+			}
+			if (nodes - reportedNodes < TIME_CHECK_INTERVAL) {
+				return false;
+			}
+
+			long total = owner.totalNodes.addAndGet(nodes - reportedNodes);
+			reportedNodes = nodes;
+			if ((owner.phaseNodeLimit != 0 && total >= owner.phaseNodeLimit) || System.currentTimeMillis() >= owner.phaseDeadline) {
+				owner.budgetExceeded = true;
+				owner.stopped = true;
+				return true;
+			}
+			return false;
+		}
+
+		//if other threads are short of work, every move at this depth except the first becomes a new
+		//task (the same as if they had been searched here, but on a copy of the game)
+		@Override
+		protected void split(int depth) {
+			MoveList moves = candidates[depth];
+			if (moves.size() < 2 || ForkJoinTask.getSurplusQueuedTaskCount() > SPLIT_THRESHOLD) {
+				return;
+			}
+
+			//the moves to reach this depth, which every new task starts with
+			int length = task.prefix.length;
+			for (int i = 0; i < depth; ++i) {
+				length += expandedLength(path[i]);
+			}
+			int base[] = new int[length];
+			System.arraycopy(task.prefix, 0, base, 0, task.prefix.length);
+			int index = task.prefix.length;
+			for (int i = 0; i < depth; ++i) {
+				index = expandMove(path[i], base, index);
+			}
+
+			for (int i = 1; i < moves.size(); ++i) {
+				int move = moves.get(i);
+				applyMove(move);
+				++nodes;
+
+				if (addPosition(getPositionKey())) {
+					int prefix[] = new int[length + expandedLength(move)];
+					System.arraycopy(base, 0, prefix, 0, length);
+					expandMove(move, prefix, length);
+
+					task.addToPendingCount(1);
+					new SearchTask(owner, task, copyForTask(game), prefix).fork();
+				}
+
+				unapplyMove(move);
+			}
+
+			int first = moves.get(0);
+			moves.clear();
+			moves.add(first);
+		}
+	}
+
+	//solves a single deal from the command line, eg. java ParallelSolver 12345 draw3 100000000 0 16
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("usage: ParallelSolver <seed> [draw1|draw3] [max nodes] [max milliseconds] [threads]");
+			return;
+		}
+
+		GameOptions opt = new GameOptions();
+		opt.draw3 = args.length < 2 || !args[1].equals("draw1");
+
+		long maxNodes = args.length >= 3 ? Long.parseLong(args[2]) : 100000000;
+		long maxMillis = args.length >= 4 ? Long.parseLong(args[3]) : 0;
+		int threads = args.length >= 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		ParallelSolver solver = new ParallelSolver(maxNodes, maxMillis, threads);
+		long startTime = System.currentTimeMillis();
+		Result result = solver.solve((int) Long.decode(args[0]).longValue(), opt);
+		long elapsed = System.currentTimeMillis() - startTime;
+
+		System.out.printf("%s after %d positions in %d ms on %d threads%n", result, solver.getNodes(), elapsed, solver.getThreads());
+		for (int i = 0; i < solver.getSolutionLength(); ++i) {
+			System.out.printf("%3d: %s%n", i + 1, Move.toString(solver.getSolutionMove(i)));
+		}
+	}
+}
@@ -7,88 +7,226 @@
  * 
  */
 
-import java.util.LinkedList;
-
-public abstract class Pile {	
-	abstract protected boolean canAdd(Card c);
+public abstract class Pile {
+	abstract protected boolean canAdd(byte c);
 	abstract protected boolean canAdd(Pile p);
-	
-	protected LinkedList<Card> cards;
-	
+
+	//a pile can never hold more than a whole deck, so a fixed size ring buffer is used
+	//(this must be a power of two so indices can be wrapped with a mask)
+	static final int CAPACITY = 64;
+	static final int INDEX_MASK = CAPACITY - 1;
+
+	protected byte cards[];		//card encodings (see Card.encode), the top card is at cards[head]
+	protected int head;			//index of the top card
+	protected int size;			//number of cards, the bottom card is at cards[(head + size - 1) & INDEX_MASK]
+
+	//the hash of the cards in the pile is kept up to date as cards are added and removed (see Zobrist)
+	//the positions used for the keys are counted from whichever end of the pile doesn't normally
+	//change, so that adding or removing a card only needs one key
+	protected long hash;
+	protected int hashSlot = Zobrist.NOT_HASHED;
+	protected boolean hashFromTop;		//true if cards normally come and go from the bottom (ie. the deal pile)
+
 	//copy constructor
 	public Pile(Pile other) {
-		cards = new LinkedList<Card>();
-		
-		for (Card card : other.cards) {
-			cards.add(card);
+		cards = new byte[CAPACITY];
+		System.arraycopy(other.cards, 0, cards, 0, CAPACITY);
+		head = other.head;
+		size = other.size;
+		hash = other.hash;
+		hashSlot = other.hashSlot;
+		hashFromTop = other.hashFromTop;
+	}
+
+	//start hashing the pile with a given set of keys
+	void setHashSlot(int slot, boolean fromTop) {
+		hashSlot = slot;
+		hashFromTop = fromTop;
+		rehash();
+	}
+
+	long getHash() {
+		return hash;
+	}
+
+	//recompute the hash from scratch, needed when cards come or go from the end the positions are counted from
+	protected void rehash() {
+		hash = 0;
+		if (hashSlot == Zobrist.NOT_HASHED) {
+			return;
+		}
+		for (int depth = 0; depth < size; ++depth) {
+			hash ^= Zobrist.cardKey(hashSlot, hashFromTop ? depth : size - 1 - depth, getCode(depth));
+		}
+	}
+
+	//low level operations on the card encodings, these do not check the rules
+	byte getTopCode() {
+		return cards[head];
+	}
+
+	byte getBottomCode() {
+		return cards[(head + size - 1) & INDEX_MASK];
+	}
+
+	//gets the card a given number of cards down from the top (0 is the top card)
+	byte getCode(int depth) {
+		return cards[(head + depth) & INDEX_MASK];
+	}
+
+	void pushTop(byte c) {
+		head = (head - 1) & INDEX_MASK;
+		cards[head] = c;
+		++size;
+
+		if (hashSlot != Zobrist.NOT_HASHED) {
+			if (hashFromTop) rehash();
+			else hash ^= Zobrist.cardKey(hashSlot, size - 1, c);
+		}
+	}
+
+	void pushBottom(byte c) {
+		cards[(head + size) & INDEX_MASK] = c;
+		++size;
+
+		if (hashSlot != Zobrist.NOT_HASHED) {
+			if (hashFromTop) hash ^= Zobrist.cardKey(hashSlot, size - 1, c);
+			else rehash();
+		}
+	}
+
+	byte popTop() {
+		byte c = cards[head];
+		head = (head + 1) & INDEX_MASK;
+		--size;
+
+		if (hashSlot != Zobrist.NOT_HASHED) {
+			if (hashFromTop) rehash();
+			else hash ^= Zobrist.cardKey(hashSlot, size, c);
 		}
+		return c;
 	}
-	
+
+	byte popBottom() {
+		--size;
+		byte c = cards[(head + size) & INDEX_MASK];
+
+		if (hashSlot != Zobrist.NOT_HASHED) {
+			if (hashFromTop) hash ^= Zobrist.cardKey(hashSlot, size, c);
+			else rehash();
+		}
+		return c;
+	}
+
+	void clear() {
+		head = 0;
+		size = 0;
+		hash = 0;
+	}
+
+	protected boolean canAdd(Card c) {
+		return canAdd(c.code);
+	}
+
 	Card getBottomCard() {
-		return cards.getLast();
+		return Card.get(getBottomCode());
 	}
-	
+
 	Card getTopCard() {
-		return cards.getFirst();
+		return Card.get(getTopCode());
 	}
-	
+
+	Card getCard(int depth) {
+		return Card.get(getCode(depth));
+	}
+
 	Card removeTopCard() {
-		return cards.removeFirst();
+		return Card.get(popTop());
 	}
-	
+
 	Card removeBottomCard() {
-		return cards.removeLast();
+		return Card.get(popBottom());
 	}
-	
+
 	int getHeight() {
-		return cards.size();
+		return size;
 	}
-	
+
 	void forceAddCard(Card c) {
 		// used to initialise the pile
-		cards.addFirst(c);
+		pushTop(c.code);
 	}
-	
+
 	boolean addCard(Card c) {
-		if (!canAdd(c)) {
+		if (!canAdd(c.code)) {
 			return false;
 		}
-		
-		cards.addFirst(c);
-		
+
+		pushTop(c.code);
+
 		return true;
 	}
-	
+
 	void forceAddPile(Pile p) {
-		while (p.getHeight() != 0) {
-			cards.addFirst(p.removeBottomCard());
+		forceAddPile(p, p.size);
+	}
+
+	//moves the top few cards of another pile onto this one, keeping their order
+	//(the hashes are only recomputed once at the end if the cards go on the end the positions are counted from)
+	void forceAddPile(Pile p, int count) {
+		boolean hashEach = hashSlot != Zobrist.NOT_HASHED && !hashFromTop;
+		for (int depth = count - 1; depth >= 0; --depth) {
+			byte c = p.getCode(depth);
+			head = (head - 1) & INDEX_MASK;
+			cards[head] = c;
+			++size;
+			if (hashEach) {
+				hash ^= Zobrist.cardKey(hashSlot, size - 1, c);
+			}
+		}
+		if (hashSlot != Zobrist.NOT_HASHED && hashFromTop) {
+			rehash();
+		}
+
+		hashEach = p.hashSlot != Zobrist.NOT_HASHED && !p.hashFromTop;
+		for (int i = 0; i < count; ++i) {
+			if (hashEach) {
+				p.hash ^= Zobrist.cardKey(p.hashSlot, p.size - 1, p.cards[p.head]);
+			}
+			p.head = (p.head + 1) & INDEX_MASK;
+			--p.size;
+		}
+		if (p.hashSlot != Zobrist.NOT_HASHED && p.hashFromTop) {
+			p.rehash();
 		}
 	}
-	
+
 	boolean addPile(Pile p) {
 		if (p.getHeight() == 1) {
-			return addCard(p.getTopCard());
+			if (!canAdd(p.getTopCode())) {
+				return false;
+			}
+			pushTop(p.popTop());
+			return true;
 		}
 		if (!canAdd(p)) {
 			return false;
 		}
-		
-		while (p.getHeight() != 0) {
-			cards.addFirst(p.removeBottomCard());
-		}
-		
+
+		forceAddPile(p);
+
 		return true;
 	}
-	
+
 	Pile() {
-		cards = new LinkedList<Card>();	
+		cards = new byte[CAPACITY];
 	}
-	
+
 	Pile(Pile other, int amount) {
-		cards = new LinkedList<Card>();
-		
-		while (amount-- != 0 && other.getHeight() != 0) {
-			cards.addLast(other.removeTopCard());
+		cards = new byte[CAPACITY];
+
+		while (amount-- != 0 && other.size != 0) {
+			pushBottom(other.popTop());
 		}
 	}
 }
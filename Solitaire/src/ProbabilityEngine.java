@@ -0,0 +1,111 @@
+
+/*
+ *	Solitaire - ProbabilityEngine.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+//keeps an estimate of the chance of winning the game (see WinEstimator) up to date in the background. the
+//deals are played in rounds, and the results so far are reported after each one, so the estimate shows up
+//quickly and then settles as more deals are played. like HintEngine, every request (and cancel) starts a
+//new generation, and an older one stops part way through its round without reporting back
+public abstract class ProbabilityEngine {
+
+	static final int ROUND_SAMPLES = 256;
+
+	protected ExecutorService executor;
+	protected WinEstimator estimator;				//only used on the estimating thread
+	protected int maxSamples;
+	protected volatile int generation;
+
+	public ProbabilityEngine(int _maxSamples, long maxPlayoutNodes) {
+		maxSamples = _maxSamples;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "win estimate");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+
+		//the deals are played on every processor, but only when nothing else wants it
+		estimator = new WinEstimator(maxPlayoutNodes) {
+			@Override
+			protected ForkJoinPool createPool(int threads) {
+				return new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+					@Override
+					public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+						ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				}, null, false);
+			}
+		};
+	}
+
+	//called on the event dispatch thread with the chance of winning, the move that won the most deals
+	//(see Move, or -1 if there are no moves), and how many deals were played
+	protected abstract void estimated(double probability, int bestMove, int samples);
+
+	//starts estimating from the game's current position, this must be called on the event dispatch
+	//thread, and estimated() is called on it later, once for each round
+	public void request(Solitaire game) {
+		final int requested = ++generation;
+		final Solitaire position = Solver.copyForSearch(game);
+		estimator.stop();
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				//a newer request is already waiting
+				if (requested != generation) {
+					return;
+				}
+
+				//the same position always gets the same deals, so going back to it gives the same answer
+				estimator.estimate(position, ROUND_SAMPLES, position.getHash());
+				while (requested == generation) {
+					report(requested);
+					if (estimator.isComplete() || estimator.getSamples() >= maxSamples) {
+						return;
+					}
+					estimator.estimateMore(ROUND_SAMPLES);
+				}
+			}
+		});
+	}
+
+	//stops any estimate that is going, and makes sure it doesn't report back
+	public void cancel() {
+		++generation;
+		estimator.stop();
+	}
+
+	protected void report(final int requested) {
+		final double probability = estimator.getWinProbability();
+		final int bestMove = estimator.getBestMove();
+		final int samples = estimator.getSamples();
+
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (requested == generation) {
+					estimated(probability, bestMove, samples);
+				}
+			}
+		});
+	}
+}
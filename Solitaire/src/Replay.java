@@ -0,0 +1,191 @@
+
+/*
+ *	Solitaire - Replay.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+//plays back games recorded by ReplayLog as fast as possible, without a window. the game runs on a
+//clock that is moved forward by the times in the log, so time penalties and the win bonus come out
+//the same as they did when it was played, and the final score can be checked against the one recorded
+public class Replay {
+
+	protected byte data[];
+	protected int position;
+
+	protected long clock;					//the time the game being replayed sees
+	protected int recordedScore;
+	protected int recordedWinSeconds;
+	protected long events;					//events replayed so far, over every game
+
+	public Replay(byte _data[]) {
+		data = _data;
+		position = 0;
+	}
+
+	public boolean hasNext() {
+		return position < data.length;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	//the score and win time from the end of the log, to compare with the replayed game
+	public int getRecordedScore() {
+		return recordedScore;
+	}
+
+	public int getRecordedWinSeconds() {
+		return recordedWinSeconds;
+	}
+
+	protected int readByte() throws IOException {
+		if (position >= data.length) {
+			throw new IOException("replay log ends part way through a game");
+		}
+		return data[position++] & 0xFF;
+	}
+
+	protected int readInt() throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; ++i) {
+			value = value << 8 | readByte();
+		}
+		return value;
+	}
+
+	protected long readLong() throws IOException {
+		long high = readInt() & 0xFFFFFFFFL;
+		return high << 32 | (readInt() & 0xFFFFFFFFL);
+	}
+
+	protected long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	//replays the next game in the log up to its end, returning the game as it was when it finished
+	public Solitaire next() throws IOException {
+		if (readByte() != ReplayLog.MAGIC_0 || readByte() != ReplayLog.MAGIC_1) {
+			throw new IOException("not a replay log at byte " + (position - 2));
+		}
+		int version = readByte();
+		if (version != ReplayLog.VERSION) {
+			throw new IOException("unsupported replay log version " + version);
+		}
+
+		GameOptions opt = new GameOptions();
+		opt.useSeed = true;
+		opt.initialSeed = readInt();
+		int flags = readByte();
+		opt.draw3 = (flags & 1) != 0;
+		opt.timed = (flags & 2) != 0;
+		opt.cumulative = (flags & 4) != 0;
+		opt.scoring = Solitaire.ScoringMode.values()[flags >> 3];
+		opt.initialScore = (int) ReplayLog.unzigzag(readVarint());
+		opt.undoLimit = (int) readVarint();
+		clock = readLong();
+
+		Solitaire game = new Solitaire(opt) {
+			@Override
+			protected long currentTimeMillis() {
+				return clock;
+			}
+		};
+
+		while (true) {
+			int header = readByte();
+			int type = header >> 4;
+			int argument = header & 0xF;
+
+			if (type == ReplayLog.END) {
+				recordedScore = (int) ReplayLog.unzigzag(readVarint());
+				recordedWinSeconds = (int) readVarint();
+				return game;
+			}
+
+			//anything after the event type comes before the time
+			int count = type == ReplayLog.HOLD ? readByte() : 0;
+			int move = type == ReplayLog.MOVE ? (int) readVarint() : 0;
+			clock += readVarint();
+			++events;
+
+			switch (type) {
+			case ReplayLog.HOLD:
+				game.hold(argument, count);
+				break;
+			case ReplayLog.RELEASE:
+				game.release(argument - 1);
+				break;
+			case ReplayLog.FLIP_HAND:
+				game.flipHand(argument);
+				break;
+			case ReplayLog.FLIP_COLUMN:
+				game.flipColumn(argument);
+				break;
+			case ReplayLog.UNDO:
+				game.undo();
+				break;
+			case ReplayLog.PENALTY:
+				game.getScore();
+				break;
+			case ReplayLog.TIMED:
+				game.setTimed(argument != 0);
+				break;
+			case ReplayLog.MOVE:
+				game.apply(move);
+				break;
+			default:
+				throw new IOException("unknown replay event " + type + " at byte " + (position - 1));
+			}
+		}
+	}
+
+	//replays every game in the files given, printing any whose score or time doesn't match the log
+	//eg. java -Dsolitaire.replayFile=games.replay Solitaire, then java Replay games.replay
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: Replay <replay log>...");
+			return;
+		}
+
+		long games = 0;
+		long mismatches = 0;
+		long events = 0;
+		long elapsed = 0;
+
+		for (String name : args) {
+			Replay replay = new Replay(Files.readAllBytes(new File(name).toPath()));
+
+			long startTime = System.nanoTime();
+			while (replay.hasNext()) {
+				Solitaire game = replay.next();
+				++games;
+
+				if (game.score != replay.getRecordedScore() || game.winSeconds != replay.getRecordedWinSeconds()) {
+					++mismatches;
+					System.out.printf("%s: game %d (seed %d) replayed to a score of %d in %d seconds, but the log has %d in %d seconds%n",
+							name, games, game.seed, game.score, game.winSeconds, replay.getRecordedScore(), replay.getRecordedWinSeconds());
+				}
+			}
+			elapsed += System.nanoTime() - startTime;
+			events += replay.getEvents();
+		}
+
+		double seconds = Math.max(elapsed, 1) / 1e9;
+		System.out.printf("%d games, %d mismatched, %d events, %.0f games/s, %.0f events/s%n", games, mismatches, events, games / seconds, events / seconds);
+	}
+}
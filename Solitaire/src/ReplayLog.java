@@ -0,0 +1,180 @@
+
+/*
+ *	Solitaire - ReplayLog.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+//a compact record of everything done in a game, so that it can be played again later (see Replay).
+//it starts with the seed and the options, then each action takes one byte for what it was, a byte
+//or two more for where it happened, and the milliseconds since the action before it. the game
+//calls it as it goes, and it only ever appends to an array so it doesn't slow the game down
+public class ReplayLog {
+
+	static final byte MAGIC_0 = 'S';
+	static final byte MAGIC_1 = 'R';
+	static final byte VERSION = 1;
+
+	//what each event is, in the top four bits of its first byte (the bottom four are a small argument)
+	static final int HOLD = 0;				//column, then a byte with the number of cards
+	static final int RELEASE = 1;			//column + 1 (the cards can be dropped on column -1)
+	static final int FLIP_HAND = 2;			//number of cards
+	static final int FLIP_COLUMN = 3;		//column
+	static final int UNDO = 4;
+	static final int PENALTY = 5;			//time penalties were taken off the score
+	static final int TIMED = 6;				//1 if the time penalties were turned on, 0 if off
+	static final int MOVE = 7;				//followed by the move (see Move) for Solitaire.apply
+	static final int END = 15;				//followed by the score and the time the game was won in
+
+	protected byte data[];
+	protected int length;
+	protected long previousTime;
+	protected boolean finished;
+
+	public ReplayLog(Solitaire game) {
+		data = new byte[256];
+		GameOptions opt = game.options;
+
+		writeByte(MAGIC_0);
+		writeByte(MAGIC_1);
+		writeByte(VERSION);
+		writeInt(game.seed);
+		writeByte((opt.draw3 ? 1 : 0) | (opt.timed ? 2 : 0) | (opt.cumulative ? 4 : 0) | (opt.scoring.ordinal() << 3));
+		writeVarint(zigzag(opt.initialScore));
+		writeVarint(opt.undoLimit);
+
+		//the actions are timed from here, so the first delta says how long the player waited to start
+		previousTime = game.currentTimeMillis();
+		writeLong(previousTime);
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	protected void writeByte(int value) {
+		if (length == data.length) {
+			byte bigger[] = new byte[data.length * 2];
+			System.arraycopy(data, 0, bigger, 0, length);
+			data = bigger;
+		}
+		data[length++] = (byte) value;
+	}
+
+	protected void writeInt(int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			writeByte(value >>> shift);
+		}
+	}
+
+	protected void writeLong(long value) {
+		writeInt((int) (value >>> 32));
+		writeInt((int) value);
+	}
+
+	//seven bits at a time, with the top bit set on every byte but the last
+	protected void writeVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+
+	//so small negative numbers are still only a byte as a varint
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	//every event ends with the time since the one before it (going backwards counts as no time)
+	protected void event(int type, int argument) {
+		if (finished) {
+			return;
+		}
+		writeByte(type << 4 | (argument & 0xF));
+	}
+
+	protected void delta(long time) {
+		if (finished) {
+			return;
+		}
+		writeVarint(Math.max(time - previousTime, 0));
+		previousTime = Math.max(time, previousTime);
+	}
+
+	public void hold(long time, int column, int count) {
+		event(HOLD, column);
+		if (!finished) {
+			writeByte(count);
+		}
+		delta(time);
+	}
+
+	public void release(long time, int column) {
+		event(RELEASE, column + 1);
+		delta(time);
+	}
+
+	public void flipHand(long time, int count) {
+		event(FLIP_HAND, count);
+		delta(time);
+	}
+
+	public void flipColumn(long time, int column) {
+		event(FLIP_COLUMN, column);
+		delta(time);
+	}
+
+	public void undo(long time) {
+		event(UNDO, 0);
+		delta(time);
+	}
+
+	public void penalty(long time) {
+		event(PENALTY, 0);
+		delta(time);
+	}
+
+	public void timed(long time, boolean timed) {
+		event(TIMED, timed ? 1 : 0);
+		delta(time);
+	}
+
+	public void move(long time, int move) {
+		event(MOVE, 0);
+		if (!finished) {
+			writeVarint(move & 0xFFFFFFFFL);
+		}
+		delta(time);
+	}
+
+	//records the final score for checking the replay against, nothing more is added after this.
+	//the score is read directly, so that finishing doesn't apply any more time penalties
+	public void finish(Solitaire game) {
+		if (finished) {
+			return;
+		}
+		writeByte(END << 4);
+		writeVarint(zigzag(game.score));
+		writeVarint(game.winSeconds);
+		finished = true;
+	}
+
+	//logs are written one after another, so a file can hold any number of games
+	public void writeTo(OutputStream stream) throws IOException {
+		stream.write(data, 0, length);
+	}
+}
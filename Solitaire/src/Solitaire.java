@@ -9,36 +9,6 @@
 
 import java.util.Random;
 
-class GameOptions {
-	Solitaire.ScoringMode scoring;
-	boolean timed;
-	boolean draw3;
-	boolean cumulative;
-	
-	int initialScore;
-	int initialSeed;
-	boolean useSeed;
-	
-	GameOptions() {
-		scoring = Solitaire.ScoringMode.Standard;
-		timed = true;
-		draw3 = true;
-		cumulative = false;
-		
-		initialScore = 0;
-		initialSeed = 0;
-		useSeed = false;
-	}
-	
-	void setInitialScore(int currentScore) {
-		if (scoring == Solitaire.ScoringMode.Vegas) {
-			initialScore = cumulative ? currentScore - 52 : -52;
-		} else {
-			initialScore = 0;
-		}
-	}
-};
-
 public class Solitaire {
 	
 	//used to set how the scoring is done
@@ -63,6 +33,11 @@ public class Solitaire {
 	static final int HAND_COLUMN_BASE = 11;			//index for the showingPile (11)
 	static final int DRAW_PILE_BASE = 12;			//dummy index used for clicking on the dealPile (used by GUI routines)
 	
+	//the parts of the game that are counted separately by getVersion(), one for each pile index above (with the
+	//deal pile counted as part of the hand), and one more for the score and time
+	static final int STATUS_REGION = DRAW_PILE_BASE;
+	static final int REGION_COUNT = STATUS_REGION + 1;
+	
 	protected long firstMoveTimestamp = 0;			//milliseconds since Unix epoch from when first move made (release or flip)
 	protected int winSeconds = 0;					//zero before game is won, if game is won then how long it took to win 
 	protected int score = 0;						//score (may not reflect latest time penalty, that is gone in getScore)
@@ -72,11 +47,12 @@ public class Solitaire {
 													//moved back where they were if a move is illegal)
 	protected int numberOfUndos = 0;				//persists between undos, used to reduce bonus score if undos were made
 	protected int seed = 0;
-	Solitaire undoState;							//stores the state of the game prior to this one. It also contains an undoState,
-													//which allows for infinite undos. When an undo is performed, we reload variables from here
+	UndoJournal journal;							//records how to reverse each move that has been made, so they can be undone
+	ReplayLog log;									//records every action for replaying the game later, or null if not recording
+	protected long actionTime;						//the time of the action being done (see getActionTime), or zero if not read yet
+	protected int versions[];						//how many times each region has changed, so the GUI only draws again the ones that have
 	
 	//copy constructor, performing a deep copy of the piles
-	//this allows us to save the game state, so the undo functionality can work
 	public Solitaire(Solitaire other) {		
 		//shallow copy value types
 		firstMoveTimestamp = other.firstMoveTimestamp;
@@ -85,9 +61,10 @@ public class Solitaire {
 		previousPenaltyTime = other.previousPenaltyTime;
 		resets = other.resets;
 		holdOrigin = other.holdOrigin;
-		undoState = other.undoState;
 		numberOfUndos = other.numberOfUndos;
 		options = other.options;
+		journal = new UndoJournal(other.journal);
+		versions = other.versions.clone();
 	
 		//deep copy the piles
 		holding = new TableauPile(other.holding);
@@ -111,11 +88,12 @@ public class Solitaire {
 		//initialise variables and arrays
 		holding = new TableauPile();
 		resets = 0;
-		undoState = null;
+		journal = new UndoJournal(opt.undoLimit);
 		winSeconds = 0;
 		firstMoveTimestamp = 0;
 		previousPenaltyTime = 0;
 		options = opt;
+		versions = new int[REGION_COUNT];
 		
 		foundations = new FoundationPile[4];
 		for (int i = 0; i < 4; ++i) {
@@ -137,6 +115,39 @@ public class Solitaire {
 		for (int i = 0; i < 7; ++i) {
 			tableau[i] = new Tableau(i + 1, dealPile);
 		}
+		
+		//start hashing the piles now they have been dealt
+		for (int i = 0; i < 7; ++i) {
+			tableau[i].hiddenPile.setHashSlot(Zobrist.HIDDEN_SLOT + i * Zobrist.HIDDEN_POSITIONS, false);
+			tableau[i].visiblePile.setHashSlot(Zobrist.VISIBLE_SLOT + i * Zobrist.VISIBLE_POSITIONS, false);
+		}
+		for (int i = 0; i < 4; ++i) {
+			foundations[i].setHashSlot(Zobrist.FOUNDATION_SLOT + i * Zobrist.FOUNDATION_POSITIONS, false);
+		}
+		dealPile.setHashSlot(Zobrist.DEAL_SLOT, true);		//cards are dealt from the bottom of the deal pile
+		showingPile.setHashSlot(Zobrist.SHOWING_SLOT, false);
+		discardPile.setHashSlot(Zobrist.DISCARD_SLOT, false);
+	}
+	
+	//a 64 bit hash of the position, made from the hashes of all of the piles (which are kept up to date
+	//as cards move, see Pile), so it is cheap to get after every move. it does not include the score or
+	//time, or anything being held, as these don't change which moves can be made
+	public long getHash() {
+		long hash = dealPile.getHash() ^ showingPile.getHash() ^ discardPile.getHash();
+		
+		for (int i = 0; i < 7; ++i) {
+			hash ^= tableau[i].hiddenPile.getHash() ^ tableau[i].visiblePile.getHash();
+		}
+		for (int i = 0; i < 4; ++i) {
+			hash ^= foundations[i].getHash();
+		}
+		
+		//the number of resets only affects what can be done in Vegas mode
+		if (options.scoring == ScoringMode.Vegas) {
+			hash ^= Zobrist.resetKey(resets);
+		}
+		
+		return hash;
 	}
 	
 	public void undo() {
@@ -145,37 +156,120 @@ public class Solitaire {
 			return;
 		}
 		
-		//reload everything from the save state (deep copy not needed as we are throwing out undoState at the end)
-		tableau = undoState.tableau;
-		holding = undoState.holding;
-		dealPile = undoState.dealPile;
-		showingPile = undoState.showingPile;
-		discardPile = undoState.discardPile;
-		foundations = undoState.foundations;
-		firstMoveTimestamp = undoState.firstMoveTimestamp;
-		winSeconds = undoState.winSeconds;
-		score = undoState.score;
-		previousPenaltyTime = undoState.previousPenaltyTime;
-		resets = undoState.resets;
-		holdOrigin = undoState.holdOrigin;
-		options = undoState.options;
-		numberOfUndos = undoState.numberOfUndos + 1;		
+		//if cards are being held, they are part of the move being undone, so put them back first
+		if (holding.getHeight() != 0) {
+			forceRelease(holdOrigin);
+			markChanged(holdOrigin);
+		}
+		
+		revertMove();
 		
-		//allows for infinite undos, but only if there is something to undo
-		undoState = undoState == null ? null : undoState.undoState;
+		//the undo count is restored along with everything else, so this is one more than before the move
+		++numberOfUndos;
 		
-		//the original undoState is now lost, so no need for deep copy
+		if (log != null) {
+			actionTime = 0;
+			log.undo(getActionTime());
+		}
+	}
+	
+	//reverses the most recent move in the journal, putting the cards back and restoring
+	//the score and timer to what they were before the move
+	protected void revertMove() {
+		int move = journal.getMove();
+		int type = UndoJournal.typeOf(move);
+		
+		if (type == UndoJournal.TYPE_MOVE) {
+			//the showing pile gets refilled after the last showing card is moved, so undo that first
+			if ((move & UndoJournal.FLAG_REFILLED) != 0) {
+				discardPile.pushTop(showingPile.popTop());
+			}
+			
+			int from = UndoJournal.fromOf(move);
+			int to = UndoJournal.toOf(move);
+			if (from != to) {
+				getPile(from).forceAddPile(getPile(to), UndoJournal.countOf(move));
+			}
+			markChanged(from);
+			markChanged(to);
+			
+		} else if (type == UndoJournal.TYPE_FLIP_HAND) {
+			if ((move & UndoJournal.FLAG_RESET) != 0) {
+				//everything went from the discard pile to the deal pile
+				discardPile.forceAddPile(dealPile);
+			} else {
+				//put the dealt cards back on the bottom of the deal pile, in the reverse order they were dealt
+				for (int i = UndoJournal.countOf(move); i != 0; --i) {
+					dealPile.pushBottom(showingPile.popTop());
+				}
+			}
+			
+			//the cards which were showing went on top of the discard pile
+			showingPile.forceAddPile(discardPile, UndoJournal.shownOf(move));
+			markChanged(HAND_COLUMN_BASE);
+			
+		} else if (type == UndoJournal.TYPE_FLIP_COLUMN) {
+			if ((move & UndoJournal.FLAG_RESET) != 0) {
+				Tableau tab = tableau[UndoJournal.fromOf(move)];
+				tab.hiddenPile.pushTop(tab.visiblePile.popTop());
+				markChanged(UndoJournal.fromOf(move));
+			}
+		}
+		markStatusChanged();
+		
+		if ((move & UndoJournal.FLAG_UNTIMED) != 0) {
+			firstMoveTimestamp = 0;
+		}
+		winSeconds = journal.getField(UndoJournal.FIELD_WIN_SECONDS);
+		score = journal.getField(UndoJournal.FIELD_SCORE);
+		previousPenaltyTime = journal.getField(UndoJournal.FIELD_PENALTY_TIME);
+		resets = journal.getField(UndoJournal.FIELD_RESETS);
+		holdOrigin = journal.getField(UndoJournal.FIELD_HOLD_ORIGIN);
+		numberOfUndos = journal.getField(UndoJournal.FIELD_UNDOS);
+		
+		journal.pop();
 	}
 	
-	//save the game state so it can be undone later, and start the timer if needed
+	//record the game state so the move can be undone later, and start the timer if needed
 	public void preMove() {
-		undoState = new Solitaire(this);
+		journal.push(this);
 		
 		if (firstMoveTimestamp == 0) {
-			firstMoveTimestamp = System.currentTimeMillis();
+			firstMoveTimestamp = getActionTime();
 		}
 	}
 	
+	//all times come from here, so that a replay (see Replay) can run the game on its own clock
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+	
+	//the clock is only read once per action (hold, release, etc.), and only if it is needed,
+	//so everything done by the action uses the same time as the one in the replay log
+	protected long getActionTime() {
+		if (actionTime == 0) {
+			actionTime = currentTimeMillis();
+		}
+		return actionTime;
+	}
+	
+	//counts a change to the region that a pile index (see the constants above) is in
+	protected void markChanged(int column) {
+		if (column >= 0) {
+			++versions[Math.min(column, HAND_COLUMN_BASE)];
+		}
+	}
+	
+	protected void markStatusChanged() {
+		++versions[STATUS_REGION];
+	}
+	
+	//how many times a region has changed, anything that draws the region only needs to draw it
+	//again if this is different to last time
+	public int getVersion(int region) {
+		return versions[region];
+	}
+	
 	//adds (or subtracts) an amount from the score, ensuring the final
 	//score is not negative (unless playing in Vegas mode, where you can lose money)
 	protected void changeScore(int amount) {
@@ -185,6 +279,7 @@ public class Solitaire {
 		}
 		
 		score += amount;
+		markStatusChanged();
 		
 		//in standard mode, it cannot be negative (it can be in Vegas mode though)
 		if (score < 0 && options.scoring == ScoringMode.Standard) {
@@ -194,16 +289,24 @@ public class Solitaire {
 	
 	//returns the score, and applies time penalties
 	public int getScore() {
-		int time = getTime();
+		actionTime = 0;
+		int time = getTime(getActionTime());
 		
 		//only standard mode has time penalties
 		if (options.scoring == ScoringMode.Standard && options.timed) {
 			//if it has been longer than 10 seconds since the last penalty
 			//(loops in case it has been e.g. longer than 20 seconds)
+			boolean penalised = false;
 			while (time - previousPenaltyTime >= 10) {
 				changeScore(-2);					//apply penalty
 				previousPenaltyTime += 10;			//adding 10 instead of setting to time ensures that this records the time where the previous penalty SHOULD
 													//have been applied, even if it was applied later
+				penalised = true;
+			}
+			
+			//the score can't go below zero, so when the penalties are applied changes the score
+			if (penalised && log != null) {
+				log.penalty(actionTime);
 			}
 		}
 		
@@ -213,11 +316,26 @@ public class Solitaire {
 	//if the game is in progress, return the seconds since the start, if it hasn't started, return zero, if it has been won,
 	//return the time the game took
 	public int getTime() {
+		return getTime(currentTimeMillis());
+	}
+	
+	protected int getTime(long now) {
 		if (firstMoveTimestamp == 0) return 0;
-		else if (winSeconds == 0) return (int) ((System.currentTimeMillis() - firstMoveTimestamp) / 1000);
+		else if (winSeconds == 0) return (int) ((now - firstMoveTimestamp) / 1000);
 		return winSeconds;
 	}
 	
+	//turns the time penalties on or off part way through a game
+	public void setTimed(boolean timed) {
+		options.timed = timed;
+		markStatusChanged();
+		
+		if (log != null) {
+			actionTime = 0;
+			log.timed(getActionTime(), timed);
+		}
+	}
+	
 	//check if the game has been won
 	public boolean isWon() {
 		//each foundation needs 13 cards (from ace to king) to win
@@ -231,13 +349,14 @@ public class Solitaire {
 	}
 	
 	public boolean canUndo() {
-		return undoState != null;
+		return journal.getSize() != 0;
 	}
 
 	public void checkForWin() {
 		if (isWon() && winSeconds == 0) {
 			//record time when win occured
-			winSeconds = getTime();
+			winSeconds = getTime(getActionTime());
+			markStatusChanged();
 			
 			//time bonus is only applied in standard mode
 			if (options.scoring == ScoringMode.Standard) {
@@ -253,99 +372,310 @@ public class Solitaire {
 	//pick up a pile of cards from a given pile ID
 	//numCards determines how many cards from the parent pile are grabbed (from the front)
 	public void hold(int column, int numCards) {
+		actionTime = 0;
 		preMove();
 
 		//save where the cards came from in case the move is cancelled or illegal
 		holdOrigin = column;
 		
+		//the same holding pile is used for every move, so picking up cards doesn't create any objects
+		holding.clear();
+		
+		//only one card can be taken from the showing pile or a foundation, otherwise it is a tableau
+		Pile source = getPile(column);
+		int count = column >= FOUNDATION_COLUMN_BASE ? 1 : numCards;
+		holding.forceAddPile(source, Math.min(count, source.getHeight()));
+		markChanged(column);
+		
+		//journal the cards as going back where they came from, release() will fill in where they actually went
+		journal.setMove(column, column, holding.getHeight(), false);
+		
+		if (log != null) {
+			log.hold(getActionTime(), column, numCards);
+		}
+	}
+	
+	//gets the pile that cards are held from or released to for a given pile index
+	protected Pile getPile(int column) {
 		if (column >= HAND_COLUMN_BASE) {
-			//grab from the showing pile
-			holding = new TableauPile(showingPile, 1);
+			return showingPile;
 			
 		} else if (column >= FOUNDATION_COLUMN_BASE) {
-			//grab from one of the foundations
-			holding = new TableauPile(foundations[column - FOUNDATION_COLUMN_BASE], 1);
+			return foundations[column - FOUNDATION_COLUMN_BASE];
 			
 		} else {
-			//otherwise it is a tableau
-			holding = new TableauPile(tableau[column].visiblePile, numCards);
+			return tableau[column].visiblePile;
 		}
 	}
 	
 	//forces cards to be released on a certain pile, even if under normal rules it wouldn't be allowed
 	//used to allow cards to return to their original positions if a move is cancelled or illegal
 	public void forceRelease(int column) {
-		if (column >= HAND_COLUMN_BASE) {
-			showingPile.forceAddPile(holding);
+		getPile(column).forceAddPile(holding);
+	}
+	
+	//checks the rules for putting a number of cards on a given pile, where bottom is the
+	//deepest of the cards being put down (ie. the one that will be on the existing top card)
+	public boolean canPlace(byte bottom, int count, int column) {
+		if (column >= HAND_COLUMN_BASE || column < 0 || count == 0) {
+			//you cannot put back into the hand
+			return false;
 			
 		} else if (column >= FOUNDATION_COLUMN_BASE) {
-			foundations[column - FOUNDATION_COLUMN_BASE].forceAddPile(holding);
+			//only one card at a time can go on a foundation
+			return count == 1 && foundations[column - FOUNDATION_COLUMN_BASE].canAdd(bottom);
 			
 		} else {
-			tableau[column].visiblePile.forceAddPile(holding);
+			// ensure kings can only be moved to empty tableaus, not just empty piles
+			Tableau tab = tableau[column];
+			if (Card.rankOf(bottom) == Card.RANK_KING && tab.visiblePile.getHeight() == 0 && tab.hiddenPile.getHeight() != 0) {
+				return false;
+			}
+			return tab.visiblePile.canAdd(bottom);
 		}
 	}
 	
-	//releases the currently held cards onto a given pile
-	public void release(int column) {
-		boolean couldRelease = false;
-			
-		if (column >= HAND_COLUMN_BASE) {
-			//you cannot put back into the hand
-			couldRelease = false;
-			
-		} else if (column >= FOUNDATION_COLUMN_BASE) {
-			couldRelease = foundations[column - FOUNDATION_COLUMN_BASE].addPile(holding);
-			
+	//does the scoring and tidying up after cards from holdOrigin have been put on another pile
+	protected void finishMove(int column, int count) {
+		if (column >= FOUNDATION_COLUMN_BASE) {
 			//apply the scoring, only if it didn't come from the foundation (ie. it was already in the foundation and the user just clicked the card)
-			if (couldRelease && (holdOrigin < FOUNDATION_COLUMN_BASE || holdOrigin >= HAND_COLUMN_BASE)) {
+			if (holdOrigin < FOUNDATION_COLUMN_BASE || holdOrigin >= HAND_COLUMN_BASE) {
 				if (options.scoring == ScoringMode.Standard) changeScore(10);
 				else if (options.scoring == ScoringMode.Vegas) changeScore(5); 
 			}
 			
-		} else if (column != -1) {
-			// ensure kings can only be moved to empty tableaus, not just empty piles
-			if (holding.getBottomCard().rank == Card.RANK_KING && tableau[column].visiblePile.getHeight() == 0 && tableau[column].hiddenPile.getHeight() != 0) {
-				couldRelease = false;
-			} else {
-				couldRelease = tableau[column].visiblePile.addPile(holding);
-			}
-			
+		} else {
 			//apply scoring depending on where it comes from and the scoring mode
-			if (couldRelease && holdOrigin == HAND_COLUMN_BASE && options.scoring == ScoringMode.Standard) {
+			if (holdOrigin == HAND_COLUMN_BASE && options.scoring == ScoringMode.Standard) {
 				changeScore(5);
-			} else if (couldRelease && holdOrigin == FOUNDATION_COLUMN_BASE) {
+			} else if (holdOrigin == FOUNDATION_COLUMN_BASE) {
 				if (options.scoring == ScoringMode.Standard) changeScore(-15);
 				else if (options.scoring == ScoringMode.Vegas) changeScore(-5);
 			}
 		}
 		
-		if (!couldRelease) {
+		//make a previously discarded cards visible if the showing pile is empty
+		boolean refilled = false;
+		if (holdOrigin == HAND_COLUMN_BASE && showingPile.getHeight() == 0 && discardPile.getHeight() != 0) {
+			showingPile.pushTop(discardPile.popTop());
+			refilled = true;
+		}
+		
+		journal.setMove(holdOrigin, column, count, refilled);
+	}
+	
+	//releases the currently held cards onto a given pile
+	public void release(int column) {
+		actionTime = 0;
+		int count = holding.getHeight();
+		
+		if (count != 0 && canPlace(holding.getBottomCode(), count, column)) {
+			getPile(column).forceAddPile(holding);
+			finishMove(column, count);
+		} else {
 			//put the cards being held back where it came from if they were not placed on a valid pile
 			forceRelease(holdOrigin);
-		} else {
-			//make a previously discarded cards visible if the showing pile is empty
-			if (holdOrigin == HAND_COLUMN_BASE && showingPile.getHeight() == 0 && discardPile.getHeight() != 0) {
-				showingPile.forceAddCard(discardPile.removeTopCard());
-			}
 		}
 		
-		//clear the holding pile
-		holding = new TableauPile();
+		//clear the holding pile (it is already empty, as all of the cards went somewhere)
+		holding.clear();
+		markChanged(column);
+		markChanged(holdOrigin);
 		
 		//games can only be won on a card release, so check that here
 		checkForWin();
+		
+		if (log != null) {
+			log.release(getActionTime(), column);
+		}
+	}
+	
+	//makes a move (see Move) in one step, with the same result as holding and releasing the cards, or
+	//flipping the hand or a column. the move must be legal, eg. one from generateMoves()
+	public void apply(int move) {
+		int type = Move.getType(move);
+		
+		if (type == Move.TYPE_FLIP_HAND) {
+			flipHand(options.draw3 ? 3 : 1);
+			
+		} else if (type == Move.TYPE_FLIP_COLUMN) {
+			flipColumn(Move.getFrom(move));
+			
+		} else {
+			actionTime = 0;
+			preMove();
+			
+			holdOrigin = Move.getFrom(move);
+			getPile(Move.getTo(move)).forceAddPile(getPile(holdOrigin), Move.getCount(move));
+			finishMove(Move.getTo(move), Move.getCount(move));
+			markChanged(holdOrigin);
+			markChanged(Move.getTo(move));
+			
+			checkForWin();
+			
+			if (log != null) {
+				log.move(getActionTime(), move);
+			}
+		}
+	}
+	
+	//takes back the most recent move, unlike undo() this does not count towards the number of undos
+	public void unapply() {
+		revertMove();
+	}
+	
+	//true if every card in the tableaus is face up and nothing is held, which is when the game might be
+	//finished by just putting the cards up (see getFinishingMoves). this is cheap enough to check after every move
+	public boolean canAutoComplete() {
+		if (holding.getHeight() != 0 || isWon()) {
+			return false;
+		}
+		for (int i = 0; i < 7; ++i) {
+			if (tableau[i].hiddenPile.getHeight() != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	//fills a list with the moves that finish the game by putting every card up to the foundations, lowest first,
+	//dealing the rest of the hand when a card in it is needed. returns false (with the list empty) if that
+	//doesn't win, or would need the hand to be turned back over (which can cost points). the moves are
+	//worked out on a copy, so this game isn't changed
+	public boolean getFinishingMoves(MoveList moves) {
+		moves.clear();
+		if (!canAutoComplete()) {
+			return false;
+		}
+		
+		Solitaire copy = new Solitaire(this);
+		copy.options = new GameOptions(options);
+		copy.options.undoLimit = 0;
+		copy.journal = new UndoJournal(0);
+		
+		while (!copy.isWon()) {
+			int move = copy.getFoundationMove();
+			if (move == -1) {
+				if (copy.dealPile.getHeight() == 0) {
+					moves.clear();
+					return false;
+				}
+				move = Move.flipHand();
+			}
+			copy.apply(move);
+			moves.add(move);
+		}
+		return true;
+	}
+	
+	//the move that puts the lowest card that can go up onto the foundations, from the tops of the tableaus
+	//or the hand, or -1 if none can
+	protected int getFoundationMove() {
+		int best = -1;
+		int bestRank = Card.RANK_KING + 1;
+		for (int i = 0; i <= 7; ++i) {
+			int from = i < 7 ? i : HAND_COLUMN_BASE;
+			Pile pile = getPile(from);
+			if (pile.getHeight() == 0) {
+				continue;
+			}
+			byte card = pile.getTopCode();
+			if (Card.rankOf(card) >= bestRank) {
+				continue;
+			}
+			for (int to = FOUNDATION_COLUMN_BASE; to < HAND_COLUMN_BASE; ++to) {
+				if (canPlace(card, 1, to)) {
+					best = Move.cards(from, to, 1);
+					bestRank = Card.rankOf(card);
+					break;
+				}
+			}
+		}
+		return best;
+	}
+	
+	//fills a list with every legal move from the current position
+	//moves which don't move any cards (eg. putting cards back where they came from) are not included
+	public void generateMoves(MoveList moves) {
+		moves.clear();
+		
+		//cards to the foundations first, as they are usually the best moves
+		for (int f = FOUNDATION_COLUMN_BASE; f < HAND_COLUMN_BASE; ++f) {
+			for (int t = 0; t < 7; ++t) {
+				TableauPile visible = tableau[t].visiblePile;
+				if (visible.getHeight() != 0 && canPlace(visible.getTopCode(), 1, f)) {
+					moves.add(Move.cards(t, f, 1));
+				}
+			}
+			if (showingPile.getHeight() != 0 && canPlace(showingPile.getTopCode(), 1, f)) {
+				moves.add(Move.cards(HAND_COLUMN_BASE, f, 1));
+			}
+		}
+		
+		for (int t = 0; t < 7; ++t) {
+			TableauPile visible = tableau[t].visiblePile;
+			
+			if (visible.getHeight() == 0) {
+				if (tableau[t].hiddenPile.getHeight() != 0) {
+					moves.add(Move.flipColumn(t));
+				}
+				continue;
+			}
+			
+			//the visible cards always go down in rank from the bottom card, so only one
+			//number of cards can fit on each other tableau
+			int topRank = Card.rankOf(visible.getTopCode());
+			for (int d = 0; d < 7; ++d) {
+				if (d == t) {
+					continue;
+				}
+				
+				TableauPile target = tableau[d].visiblePile;
+				int count = target.getHeight() == 0 ? visible.getHeight() : Card.rankOf(target.getTopCode()) - topRank;
+				if (count >= 1 && count <= visible.getHeight() && canPlace(visible.getCode(count - 1), count, d)) {
+					moves.add(Move.cards(t, d, count));
+				}
+			}
+		}
+		
+		for (int d = 0; d < 7; ++d) {
+			if (showingPile.getHeight() != 0 && canPlace(showingPile.getTopCode(), 1, d)) {
+				moves.add(Move.cards(HAND_COLUMN_BASE, d, 1));
+			}
+			
+			for (int f = FOUNDATION_COLUMN_BASE; f < HAND_COLUMN_BASE; ++f) {
+				Pile foundation = getPile(f);
+				if (foundation.getHeight() != 0 && canPlace(foundation.getTopCode(), 1, d)) {
+					moves.add(Move.cards(f, d, 1));
+				}
+			}
+		}
+		
+		//an ace can also be moved between empty foundations
+		for (int f = FOUNDATION_COLUMN_BASE; f < HAND_COLUMN_BASE; ++f) {
+			Pile foundation = getPile(f);
+			if (foundation.getHeight() != 1) {
+				continue;
+			}
+			for (int d = FOUNDATION_COLUMN_BASE; d < HAND_COLUMN_BASE; ++d) {
+				if (getPile(d).getHeight() == 0) {
+					moves.add(Move.cards(f, d, 1));
+				}
+			}
+		}
+		
+		//turning over the hand does nothing if there are no cards left in it
+		if (canFlipHand() && dealPile.getHeight() + showingPile.getHeight() + discardPile.getHeight() != 0) {
+			moves.add(Move.flipHand());
+		}
 	}
 	
 	//'recycles' all of the cards in the hand
 	//assumes that the showing pile is already cleared (ie. moved into the discard pile)
+	//and that the deal pile is empty
 	protected void resetHand() {
-		//move to the deal pile
-		dealPile = discardPile;
-		
-		//clear the other ones
-		showingPile = new DealPile();
-		discardPile = new DealPile();
+		//move to the deal pile, this keeps the order and leaves the discard pile empty
+		dealPile.forceAddPile(discardPile);
 		
 		resets++;
 		
@@ -361,43 +691,63 @@ public class Solitaire {
 	
 	//determines if you can reset the hand (on Vegas mode you can only do it a set number of times)
 	public boolean canFlipHand() {
-		return !(dealPile.getHeight() == 0 && options.scoring == ScoringMode.Vegas && resets == (options.draw3 ? 2 : 0));
+		return !(dealPile.getHeight() == 0 && resets == getResetLimit());
+	}
+	
+	//how many times the hand can be reset, or -1 if there is no limit
+	public int getResetLimit() {
+		return options.scoring == ScoringMode.Vegas ? (options.draw3 ? 2 : 0) : -1;
 	}
 	
 	//flips a card in the hand
 	public void flipHand(int count) {	
+		actionTime = 0;
 		preMove();
 		
+		if (log != null) {
+			log.flipHand(getActionTime(), count);
+		}
+		
 		//ensure it is legal to do so
 		if (!canFlipHand()) {
 			return;
 		}
+		markChanged(HAND_COLUMN_BASE);
 		
 		//we have now committed to turning the card
 		
 		//put everything that was showing in the discard pile
-		while (showingPile.getHeight() != 0) {
-			discardPile.forceAddCard(showingPile.removeBottomCard());
-		}
+		int shown = showingPile.getHeight();
+		discardPile.forceAddPile(showingPile);
 		
 		//reset/recycle the hand if needed (must be done after the above step)
 		if (dealPile.getHeight() == 0) {
 			resetHand();
+			journal.setFlipHand(shown, 0, true);
 			return;
 		}
 		
 		//deal the cards
-		for (int i = 0; i < count && dealPile.getHeight() != 0; ++i) {
-			showingPile.forceAddCard(dealPile.removeBottomCard());
+		int dealt = 0;
+		for (; dealt < count && dealPile.getHeight() != 0; ++dealt) {
+			showingPile.pushTop(dealPile.popBottom());
 		}
+		
+		journal.setFlipHand(shown, dealt, false);
 	}
 	
 	//turn over a flipped over card in the tableau
 	public void flipColumn(int column) {
+		actionTime = 0;
 		preMove();
+		
+		if (log != null) {
+			log.flipColumn(getActionTime(), column);
+		}
 
 		//turn it over and add the ponts
-		tableau[column].flipOverCard();
+		journal.setFlipColumn(column, tableau[column].flipOverCard());
+		markChanged(column);
 		
 		if (options.scoring == ScoringMode.Standard) {
 			changeScore(5);
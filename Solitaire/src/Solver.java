@@ -0,0 +1,566 @@
+
+/*
+ *	Solitaire - Solver.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+//decides whether a deal can be won, by doing a depth first search of the moves from
+//Solitaire.generateMoves(), skipping positions that have already been searched
+//the search gives up (and says the result is unknown) after a number of positions or an amount of time
+//
+//the search is done twice: first skipping moves that are hardly ever needed (which finds most
+//solutions far quicker), and then if that fails, trying every move. only the second search can
+//show that a deal can't be won
+public class Solver {
+
+	public enum Result {
+		Winnable,
+		Unwinnable,
+		Unknown
+	}
+
+	//order moves are tried in, lower is tried first
+	static final int PRIORITY_FOUNDATION = 0;		//a card going up to the foundations
+	static final int PRIORITY_REVEAL = 1;			//moving all of the visible cards off a tableau with hidden cards
+	static final int PRIORITY_FROM_HAND = 2;		//playing a card from the hand
+	static final int PRIORITY_TABLEAU = 3;			//any other move between tableaus
+	static final int PRIORITY_FROM_FOUNDATION = 4;	//taking a card back down from the foundations
+	static final int PRIORITY_USELESS = 5;			//moves that can never help (or are searched another way)
+
+	//how often the clock is checked
+	static final int TIME_CHECK_INTERVAL = 1024;
+
+	//the search never just flips the hand, instead it plays a card that can be reached by flipping the hand
+	//some number of times (as flipping on its own never changes what can be done with the tableaus). these
+	//moves are stored as a normal move with the number of flips to do first in the high bits
+	static final int FLIPS_SHIFT = 16;
+
+	protected long nodeLimit;				//maximum positions to search, or 0 for no limit
+	protected long timeLimit;				//maximum milliseconds to search for, or 0 for no limit
+	protected long deadline;
+	protected long phaseNodeLimit;			//budget for the current search, as part of it goes on the first search
+	protected long phaseDeadline;
+	protected boolean pruning;				//true if moves that are rarely needed are skipped
+
+	protected Solitaire game;
+	protected TranspositionTable table;
+	protected long nodes;
+
+	//the search stack, one entry per move deep the search is
+	protected MoveList candidates[];		//moves still to try at each depth
+	protected int nextCandidate[];			//index of the next move to try at each depth
+	protected int path[];					//the move made at each depth
+
+	protected int solution[];				//the winning moves, with hand flips as separate moves
+	protected int solutionLength;
+
+	protected MoveList generated;			//scratch list for moves before they are put in order
+	protected int foundationRanks[];		//highest rank on the foundations for each suit
+	protected byte handOrder[];				//scratch list of the cards in the hand, in the order they are dealt
+
+	public Solver(long maxNodes, long maxMillis) {
+		nodeLimit = maxNodes;
+		timeLimit = maxMillis;
+		generated = new MoveList();
+		foundationRanks = new int[4];
+		handOrder = new byte[Pile.CAPACITY];
+		candidates = new MoveList[0];
+		nextCandidate = new int[0];
+		path = new int[0];
+		solution = new int[0];
+	}
+
+	//solves the deal with a given seed, using the draw and scoring modes (which limits
+	//the number of times the hand can be reset in Vegas mode) from the options
+	public Result solve(int seed, GameOptions options) {
+		GameOptions opt = new GameOptions(options);
+		opt.useSeed = true;
+		opt.initialSeed = seed;
+		opt.undoLimit = 0;
+
+		return search(new Solitaire(opt));
+	}
+
+	//solves from the current position of a game, the game itself is not changed
+	public Result solve(Solitaire position) {
+		return search(copyForSearch(position));
+	}
+
+	//makes a copy of a game that the search can change, with its own options (so the menus can't
+	//change them part way through) and a journal that can take back every move
+	static Solitaire copyForSearch(Solitaire position) {
+		Solitaire copy = new Solitaire(position);
+		copy.options = new GameOptions(position.options);
+		copy.options.undoLimit = 0;
+		copy.journal = new UndoJournal(0);
+
+		//anything being held goes back where it came from
+		if (copy.holding.getHeight() != 0) {
+			copy.forceRelease(copy.holdOrigin);
+		}
+
+		return copy;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	//the moves that win the game, only valid if the result was Winnable
+	public int getSolutionLength() {
+		return solutionLength;
+	}
+
+	public int getSolutionMove(int index) {
+		return solution[index];
+	}
+
+	public int[] getSolution() {
+		int moves[] = new int[solutionLength];
+		System.arraycopy(solution, 0, moves, 0, solutionLength);
+		return moves;
+	}
+
+	//the move the full search would try first from a position, as a plain move, or -1 if there are no
+	//moves that could help. this is for when there isn't time to find a whole solution
+	public int getPreferredMove(Solitaire position) {
+		game = copyForSearch(position);
+		pruning = false;
+		ensureDepth(0);
+		orderMoves(candidates[0]);
+		if (candidates[0].size() == 0) {
+			return -1;
+		}
+
+		int move = candidates[0].get(0);
+		return move >>> FLIPS_SHIFT != 0 ? Move.flipHand() : move;
+	}
+
+	protected Result search(Solitaire start) {
+		game = start;
+		nodes = 0;
+		solutionLength = 0;
+
+		if (game.isWon()) {
+			return Result.Winnable;
+		}
+
+		long startTime = System.currentTimeMillis();
+		deadline = timeLimit == 0 ? Long.MAX_VALUE : startTime + timeLimit;
+
+		//the quick search gets half of the budget, if it runs out of moves before then the
+		//full search gets the rest. if it says the deal can't be won that only means it can't
+		//be won without the moves that were skipped, so the full search still has to be done
+		//(a limit of 0 means no limit, so the quick search always gets at least one position)
+		pruning = true;
+		phaseNodeLimit = nodeLimit == 0 ? 0 : Math.max(1, nodeLimit / 2);
+		phaseDeadline = timeLimit == 0 ? Long.MAX_VALUE : startTime + timeLimit / 2;
+		if (searchPhase() == Result.Winnable) {
+			return Result.Winnable;
+		}
+
+		pruning = false;
+		phaseNodeLimit = nodeLimit;
+		phaseDeadline = deadline;
+		return searchPhase();
+	}
+
+	//searches from the start position, which the game is left at unless the game was won
+	protected Result searchPhase() {
+		if (table == null) {
+			table = new TranspositionTable(1 << 12);
+		}
+		table.clear();
+		addPosition(getPositionKey());
+
+		return searchFrom();
+	}
+
+	//searches from the current position (which must already have been added with addPosition())
+	protected Result searchFrom() {
+		int depth = 0;
+		ensureDepth(depth);
+		orderMoves(candidates[depth]);
+		nextCandidate[depth] = 0;
+		split(depth);
+
+		while (true) {
+			if (nextCandidate[depth] == candidates[depth].size()) {
+				//nothing left to try from here, so go back a move
+				if (depth == 0) {
+					return Result.Unwinnable;
+				}
+				--depth;
+				unapplyMove(path[depth]);
+				continue;
+			}
+
+			int move = candidates[depth].get(nextCandidate[depth]++);
+			applyMove(move);
+			++nodes;
+			path[depth] = move;
+
+			if (game.isWon()) {
+				solutionLength = expandSolution(depth + 1);
+				return Result.Winnable;
+			}
+
+			if (!addPosition(getPositionKey())) {
+				//already searched from here
+				unapplyMove(move);
+				continue;
+			}
+
+			if (outOfBudget()) {
+				for (int i = depth; i >= 0; --i) {
+					unapplyMove(path[i]);
+				}
+				return Result.Unknown;
+			}
+
+			++depth;
+			ensureDepth(depth);
+			orderMoves(candidates[depth]);
+			nextCandidate[depth] = 0;
+			split(depth);
+		}
+	}
+
+	//marks a position as searched, returning false if it already was
+	protected boolean addPosition(long key) {
+		return table.add(key);
+	}
+
+	//called once the moves at a depth have been ordered, so that other searches can take some of them
+	protected void split(int depth) {
+	}
+
+	//the hash used to spot positions that have already been searched. when the hand can be reset
+	//as often as needed, flipping through it gets back to the same place, so positions that
+	//only differ in how far through the hand they are can be treated as the same position
+	protected long getPositionKey() {
+		if (game.options.scoring == Solitaire.ScoringMode.Vegas) {
+			return game.getHash();
+		}
+
+		long hash = 0;
+		for (int i = 0; i < 7; ++i) {
+			hash ^= game.tableau[i].hiddenPile.getHash() ^ game.tableau[i].visiblePile.getHash();
+		}
+		for (int i = 0; i < 4; ++i) {
+			hash ^= game.foundations[i].getHash();
+		}
+
+		//use the order the cards will be in after the hand is next reset, but in draw 1 any
+		//card in the hand can be reached at any time, so the order doesn't matter at all
+		int cards = getHandOrder(game, handOrder);
+		boolean ordered = game.options.draw3;
+		for (int i = 0; i < cards; ++i) {
+			hash ^= Zobrist.cardKey(Zobrist.DEAL_SLOT, ordered ? i : 0, handOrder[i]);
+		}
+
+		//in draw 3 the cards are always dealt in the same groups of three after a reset. if the hand
+		//is part way through a group then the cards it can reach before the next reset are different,
+		//so positions are only the same if exactly as many cards have been dealt
+		int dealt = game.discardPile.getHeight() + game.showingPile.getHeight();
+		if (ordered && dealt % 3 != 0 && dealt != cards) {
+			hash ^= Zobrist.dealtKey(dealt);
+		}
+
+		return hash;
+	}
+
+	protected void applyMove(int move) {
+		for (int i = move >>> FLIPS_SHIFT; i != 0; --i) {
+			game.apply(Move.flipHand());
+		}
+		game.apply(move & ((1 << FLIPS_SHIFT) - 1));
+	}
+
+	protected void unapplyMove(int move) {
+		for (int i = (move >>> FLIPS_SHIFT) + 1; i != 0; --i) {
+			game.unapply();
+		}
+	}
+
+	//turns the moves on the search stack into plain moves (with the hand flips as separate moves)
+	//and returns how many there are
+	protected int expandSolution(int length) {
+		int total = 0;
+		for (int i = 0; i < length; ++i) {
+			total += expandedLength(path[i]);
+		}
+
+		if (solution.length < total) {
+			solution = new int[total];
+		}
+
+		int j = 0;
+		for (int i = 0; i < length; ++i) {
+			j = expandMove(path[i], solution, j);
+		}
+
+		return total;
+	}
+
+	//writes out a move as plain moves, returning the index after the last one written
+	static int expandMove(int move, int moves[], int index) {
+		for (int k = move >>> FLIPS_SHIFT; k != 0; --k) {
+			moves[index++] = Move.flipHand();
+		}
+		moves[index++] = move & ((1 << FLIPS_SHIFT) - 1);
+		return index;
+	}
+
+	//the number of plain moves a move is made of
+	static int expandedLength(int move) {
+		return (move >>> FLIPS_SHIFT) + 1;
+	}
+
+	protected boolean outOfBudget() {
+		if (phaseNodeLimit != 0 && nodes >= phaseNodeLimit) {
+			return true;
+		}
+		return nodes % TIME_CHECK_INTERVAL == 0 && System.currentTimeMillis() >= phaseDeadline;
+	}
+
+	protected void ensureDepth(int depth) {
+		if (depth < path.length) {
+			return;
+		}
+
+		int newLength = Math.max(64, path.length * 2);
+
+		MoveList newCandidates[] = new MoveList[newLength];
+		System.arraycopy(candidates, 0, newCandidates, 0, candidates.length);
+		for (int i = candidates.length; i < newLength; ++i) {
+			newCandidates[i] = new MoveList();
+		}
+
+		int newNextCandidate[] = new int[newLength];
+		System.arraycopy(nextCandidate, 0, newNextCandidate, 0, nextCandidate.length);
+
+		int newPath[] = new int[newLength];
+		System.arraycopy(path, 0, newPath, 0, path.length);
+
+		candidates = newCandidates;
+		nextCandidate = newNextCandidate;
+		path = newPath;
+	}
+
+	//fills a list with the moves to search from the current position, best first
+	//if there is a move that can't make things worse (turning over a card, or a safe move
+	//to the foundations) then that is the only move searched
+	protected void orderMoves(MoveList moves) {
+		game.generateMoves(generated);
+		moves.clear();
+
+		updateFoundationRanks();
+
+		for (int i = 0; i < generated.size(); ++i) {
+			int move = generated.get(i);
+			if (isForced(move)) {
+				moves.add(move);
+				return;
+			}
+		}
+
+		for (int priority = PRIORITY_FOUNDATION; priority < PRIORITY_USELESS; ++priority) {
+			for (int i = 0; i < generated.size(); ++i) {
+				int move = generated.get(i);
+				if (getPriority(move) == priority) {
+					moves.add(move);
+				}
+			}
+
+			//the cards further round the hand come after the card already showing
+			if (priority == PRIORITY_FROM_HAND) {
+				addHandMoves(moves);
+			}
+		}
+	}
+
+	//adds the moves for every card that can be played by flipping the hand round to it first
+	protected void addHandMoves(MoveList moves) {
+		int cards = getHandOrder(game, handOrder);
+		if (cards == 0) {
+			return;
+		}
+
+		//work out which card will be showing after each flip, without actually flipping the hand
+		//(this must match what Solitaire.flipHand() does)
+		int perFlip = game.options.draw3 ? 3 : 1;
+		int dealt = game.discardPile.getHeight() + game.showingPile.getHeight();
+		int resets = game.resets;
+		int resetLimit = game.getResetLimit();
+
+		//deal through to the end of the hand, reset it, and deal through again until the cards
+		//start repeating. if the hand started part way through a group of three the second time
+		//round reaches different cards, so that has to go right to the end as well
+		int start = dealt;
+		boolean wrapped = false;
+
+		for (int flips = 1; ; ++flips) {
+			if (dealt == cards) {
+				if (wrapped || resets == resetLimit) {
+					break;
+				}
+				++resets;
+				dealt = 0;
+				wrapped = true;
+				continue;
+			}
+
+			dealt = Math.min(dealt + perFlip, cards);
+			if (wrapped && dealt >= start && (start % perFlip == 0 || dealt == cards)) {
+				break;
+			}
+
+			byte card = handOrder[dealt - 1];
+			for (int to = 0; to < Solitaire.HAND_COLUMN_BASE; ++to) {
+				if (game.canPlace(card, 1, to)) {
+					moves.add((flips << FLIPS_SHIFT) | Move.cards(Solitaire.HAND_COLUMN_BASE, to, 1));
+				}
+			}
+		}
+	}
+
+	//puts the cards in the hand into an array in the order they are dealt (the discarded cards, then
+	//the showing ones, then the ones still to deal), which is the order they will be in after a reset
+	static int getHandOrder(Solitaire game, byte order[]) {
+		int count = 0;
+		for (int depth = game.discardPile.getHeight() - 1; depth >= 0; --depth) {
+			order[count++] = game.discardPile.getCode(depth);
+		}
+		for (int depth = game.showingPile.getHeight() - 1; depth >= 0; --depth) {
+			order[count++] = game.showingPile.getCode(depth);
+		}
+		for (int depth = game.dealPile.getHeight() - 1; depth >= 0; --depth) {
+			order[count++] = game.dealPile.getCode(depth);
+		}
+		return count;
+	}
+
+	protected void updateFoundationRanks() {
+		for (int i = 0; i < 4; ++i) {
+			foundationRanks[i] = 0;
+		}
+		for (int i = 0; i < 4; ++i) {
+			FoundationPile foundation = game.foundations[i];
+			if (foundation.getHeight() != 0) {
+				foundationRanks[Card.suitOf(foundation.getTopCode())] = foundation.getHeight();
+			}
+		}
+	}
+
+	//a move is forced if it is always at least as good as any other move
+	protected boolean isForced(int move) {
+		int type = Move.getType(move);
+
+		if (type == Move.TYPE_FLIP_COLUMN) {
+			return true;
+		}
+		if (type != Move.TYPE_CARDS || Move.getTo(move) < Solitaire.FOUNDATION_COLUMN_BASE) {
+			return false;
+		}
+
+		int from = Move.getFrom(move);
+		if (from >= Solitaire.FOUNDATION_COLUMN_BASE && from < Solitaire.HAND_COLUMN_BASE) {
+			return false;
+		}
+
+		//taking a card out of the hand changes which cards get dealt together in draw 3
+		if (from >= Solitaire.HAND_COLUMN_BASE && game.options.draw3) {
+			return false;
+		}
+
+		//a card is safe to put up if no card that could go on it in the tableau is still in play,
+		//which means both suits of the other colour are already up to one rank below it
+		byte card = game.getPile(from).getTopCode();
+		int rank = Card.rankOf(card);
+		if (rank <= 2) {
+			return true;
+		}
+
+		int otherColour = Card.isBlack(card) ? Card.Suit.Heart.ordinal() : Card.Suit.Spade.ordinal();
+		return foundationRanks[otherColour] >= rank - 1 && foundationRanks[otherColour + 1] >= rank - 1;
+	}
+
+	protected int getPriority(int move) {
+		int type = Move.getType(move);
+
+		if (type == Move.TYPE_FLIP_HAND) {
+			//done as part of playing a card from the hand instead
+			return PRIORITY_USELESS;
+		} else if (type == Move.TYPE_FLIP_COLUMN) {
+			return PRIORITY_REVEAL;
+		}
+
+		int from = Move.getFrom(move);
+		int to = Move.getTo(move);
+
+		if (from >= Solitaire.HAND_COLUMN_BASE) {
+			return to >= Solitaire.FOUNDATION_COLUMN_BASE ? PRIORITY_FOUNDATION : PRIORITY_FROM_HAND;
+
+		} else if (from >= Solitaire.FOUNDATION_COLUMN_BASE) {
+			//moving an ace between foundations never changes anything
+			return to >= Solitaire.FOUNDATION_COLUMN_BASE || pruning ? PRIORITY_USELESS : PRIORITY_FROM_FOUNDATION;
+
+		} else if (to >= Solitaire.FOUNDATION_COLUMN_BASE) {
+			return PRIORITY_FOUNDATION;
+		}
+
+		Tableau source = game.tableau[from];
+
+		//splitting up a run is usually only worth it to get at the card under it
+		if (pruning && Move.getCount(move) < source.visiblePile.getHeight()) {
+			byte exposed = source.visiblePile.getCode(Move.getCount(move));
+			for (int i = Solitaire.FOUNDATION_COLUMN_BASE; i < Solitaire.HAND_COLUMN_BASE; ++i) {
+				if (game.canPlace(exposed, 1, i)) {
+					return PRIORITY_TABLEAU;
+				}
+			}
+			return PRIORITY_USELESS;
+		}
+
+		if (Move.getCount(move) == source.visiblePile.getHeight()) {
+			if (source.hiddenPile.getHeight() != 0) {
+				return PRIORITY_REVEAL;
+			}
+
+			//moving a king from one empty space to another
+			if (game.tableau[to].visiblePile.getHeight() == 0) {
+				return PRIORITY_USELESS;
+			}
+		}
+
+		return PRIORITY_TABLEAU;
+	}
+
+	//solves a single deal from the command line, eg. java Solver 12345 draw1
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("usage: Solver <seed> [draw1|draw3] [max nodes] [max milliseconds]");
+			return;
+		}
+
+		GameOptions opt = new GameOptions();
+		opt.draw3 = args.length < 2 || !args[1].equals("draw1");
+
+		long maxNodes = args.length >= 3 ? Long.parseLong(args[2]) : 10000000;
+		long maxMillis = args.length >= 4 ? Long.parseLong(args[3]) : 0;
+
+		Solver solver = new Solver(maxNodes, maxMillis);
+		long startTime = System.currentTimeMillis();
+		Result result = solver.solve((int) Long.decode(args[0]).longValue(), opt);
+		long elapsed = System.currentTimeMillis() - startTime;
+
+		System.out.printf("%s after %d positions in %d ms%n", result, solver.getNodes(), elapsed);
+		for (int i = 0; i < solver.getSolutionLength(); ++i) {
+			System.out.printf("%3d: %s%n", i + 1, Move.toString(solver.getSolutionMove(i)));
+		}
+	}
+}
@@ -0,0 +1,276 @@
+
+/*
+ *	Solitaire - Survey.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+
+//solves every deal in a range of seeds on all of the cores, writing a line of CSV for each
+//one to a file as it goes. the seeds are handed out to the threads in blocks, and the blocks
+//are written in seed order, so a checkpoint file next to the output only has to record how far
+//through the range the file has got. running the same survey again carries on from there
+public class Survey {
+
+	static final int BLOCK_SIZE = 256;					//seeds handed to a thread at once
+	static final int PENDING_BLOCKS_PER_THREAD = 4;		//blocks that can be finished but waiting on an earlier one
+	static final long CHECKPOINT_INTERVAL = 5000;		//milliseconds between checkpoints
+	static final String HEADER = "seed,draw,scoring,result,nodes,moves,micros\n";	//moves is the length of the solution found, not the shortest
+	static final long NO_MORE_BLOCKS = Long.MIN_VALUE;		//from takeBlock(), every seed is in the range of an int
+
+	protected long startSeed;
+	protected long endSeed;				//one past the last seed
+	protected GameOptions options;
+	protected long maxNodes;
+	protected long maxMillis;
+	protected int threads;
+
+	protected File outputFile;
+	protected File checkpointFile;
+	protected FileChannel output;
+
+	//everything below is only used while holding the lock on the survey
+	protected long nextSeed;			//first seed of the next block to hand out
+	protected long writtenSeed;			//every seed before this one has been written out
+	protected long writtenBytes;		//length of the output up to writtenSeed
+	protected TreeMap<Long, byte[]> finishedBlocks;
+	protected long lastCheckpoint;
+	protected long solvedSeeds;			//number solved by this run (not counting ones from before a resume)
+	protected Throwable error;			//the first thing that went wrong, which stops the survey
+
+	public Survey(long start, long end, GameOptions opt, long nodes, long millis, int threadCount, File file) {
+		startSeed = start;
+		endSeed = end;
+		options = opt;
+		maxNodes = nodes;
+		maxMillis = millis;
+		threads = threadCount;
+		outputFile = file;
+		checkpointFile = new File(file.getPath() + ".checkpoint");
+		finishedBlocks = new TreeMap<Long, byte[]>();
+	}
+
+	//what the checkpoint describes, so that a different survey can't carry on from it by mistake
+	protected String describe() {
+		return startSeed + " " + endSeed + " " + (options.draw3 ? "draw3" : "draw1") + " " + options.scoring;
+	}
+
+	//works out where to start from, and cuts off anything written after the last checkpoint
+	protected void open() throws IOException {
+		nextSeed = startSeed;
+		writtenBytes = 0;
+
+		if (checkpointFile.exists()) {
+			String fields[] = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.US_ASCII).trim().split("\n");
+			if (fields.length != 3 || !fields[0].equals(describe())) {
+				throw new IOException(checkpointFile + " is for a different survey (" + fields[0] + ")");
+			}
+			nextSeed = Long.parseLong(fields[1]);
+			writtenBytes = Long.parseLong(fields[2]);
+
+		} else if (outputFile.exists() && outputFile.length() != 0) {
+			throw new IOException(outputFile + " already exists and has no checkpoint to resume from");
+		}
+
+		output = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		output.truncate(writtenBytes);
+		output.position(writtenBytes);
+
+		writtenSeed = nextSeed;
+		if (writtenBytes == 0) {
+			write(HEADER.getBytes(StandardCharsets.US_ASCII));
+			checkpoint();
+		}
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	protected void write(byte data[]) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining()) {
+			output.write(buffer);
+		}
+		writtenBytes += data.length;
+	}
+
+	//the output is forced to disk first, so the checkpoint never points past what was written
+	protected void checkpoint() throws IOException {
+		output.force(false);
+
+		File temporary = new File(checkpointFile.getPath() + ".tmp");
+		String text = describe() + "\n" + writtenSeed + "\n" + writtenBytes + "\n";
+		Files.write(temporary.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+		Files.move(temporary.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	//hands out the first seed of a block to solve, or NO_MORE_BLOCKS once there are none left. threads
+	//that get too far ahead of the oldest unfinished block wait, so finished blocks can't pile up
+	protected synchronized long takeBlock() throws InterruptedException {
+		while (error == null && finishedBlocks.size() >= threads * PENDING_BLOCKS_PER_THREAD) {
+			wait();
+		}
+		if (error != null || nextSeed >= endSeed) {
+			return NO_MORE_BLOCKS;
+		}
+
+		long first = nextSeed;
+		nextSeed = Math.min(first + BLOCK_SIZE, endSeed);
+		return first;
+	}
+
+	//writes out a block, and any blocks after it that were waiting for it
+	protected synchronized void finishBlock(long first, int count, byte lines[]) {
+		finishedBlocks.put(first, lines);
+		solvedSeeds += count;
+
+		try {
+			while (!finishedBlocks.isEmpty() && finishedBlocks.firstKey() == writtenSeed) {
+				byte data[] = finishedBlocks.remove(writtenSeed);
+				write(data);
+				writtenSeed = Math.min(writtenSeed + BLOCK_SIZE, endSeed);
+			}
+			if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+				checkpoint();
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+
+		notifyAll();
+	}
+
+	//stops any more blocks being handed out, and wakes the threads waiting for one so they can finish
+	protected synchronized void fail(Throwable e) {
+		if (error == null) {
+			error = e;
+		}
+		notifyAll();
+	}
+
+	protected synchronized long getSolvedSeeds() {
+		return solvedSeeds;
+	}
+
+	//solves blocks of seeds until there are none left, each thread has its own solver
+	protected void work() {
+		Solver solver = new Solver(maxNodes, maxMillis);
+		StringBuilder lines = new StringBuilder();
+		String draw = options.draw3 ? "draw3" : "draw1";
+		String scoring = options.scoring == Solitaire.ScoringMode.Vegas ? "vegas" : "standard";
+
+		try {
+			long first;
+			while ((first = takeBlock()) != NO_MORE_BLOCKS) {
+				long last = Math.min(first + BLOCK_SIZE, endSeed);
+				lines.setLength(0);
+
+				for (long seed = first; seed < last; ++seed) {
+					long startTime = System.nanoTime();
+					Solver.Result result = solver.solve((int) seed, options);
+					long micros = (System.nanoTime() - startTime) / 1000;
+
+					lines.append(seed).append(',').append(draw).append(',').append(scoring).append(',').append(result).append(',');
+					lines.append(solver.getNodes()).append(',');
+					lines.append(result == Solver.Result.Winnable ? solver.getSolutionLength() : 0).append(',');
+					lines.append(micros).append('\n');
+				}
+
+				finishBlock(first, (int) (last - first), lines.toString().getBytes(StandardCharsets.US_ASCII));
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (Throwable e) {
+			//a block that is never finished holds up the ones after it, so the whole survey has to stop
+			fail(e);
+		}
+	}
+
+	public void run() throws IOException, InterruptedException {
+		open();
+		long total = endSeed - nextSeed;
+		if (total == 0) {
+			System.out.println("the survey has already finished");
+			output.close();
+			return;
+		}
+
+		Thread workers[] = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "survey-" + i);
+			workers[i].start();
+		}
+
+		long startTime = System.currentTimeMillis();
+		for (Thread worker : workers) {
+			while (worker.isAlive()) {
+				worker.join(CHECKPOINT_INTERVAL);
+
+				long solved = getSolvedSeeds();
+				double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+				System.out.printf("%d / %d seeds, %.0f seeds/s, %.1f seeds/s per thread%n", solved, total, solved / seconds, solved / seconds / threads);
+			}
+		}
+
+		synchronized (this) {
+			if (error == null) {
+				checkpoint();
+			}
+		}
+		output.close();
+
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		} else if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error != null) {
+			throw new IOException(error);
+		}
+	}
+
+	//eg. java Survey 0 1000000 draw3 survey.csv
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 4) {
+			System.out.println("usage: Survey <first seed> <end seed> <draw1|draw3> <output.csv> [standard|vegas] [max nodes] [max milliseconds] [threads]");
+			System.out.println("seeds from first up to but not including end are solved, rerun the same command to resume");
+			return;
+		}
+
+		GameOptions opt = new GameOptions();
+		opt.draw3 = !args[2].equals("draw1");
+		if (args.length >= 5 && args[4].equals("vegas")) {
+			opt.scoring = Solitaire.ScoringMode.Vegas;
+		}
+
+		long first = Long.decode(args[0]);
+		long end = Long.decode(args[1]);
+		if (first < Integer.MIN_VALUE || end - 1 > Integer.MAX_VALUE || end < first) {
+			System.out.println("seeds must be in the range of an int");
+			return;
+		}
+
+		long maxNodes = args.length >= 6 ? Long.parseLong(args[5]) : 1000000;
+		long maxMillis = args.length >= 7 ? Long.parseLong(args[6]) : 0;
+		int threads = args.length >= 8 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+
+		new Survey(first, end, opt, maxNodes, maxMillis, threads, new File(args[3])).run();
+	}
+}
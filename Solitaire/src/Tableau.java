@@ -21,7 +21,7 @@ public class Tableau {
 		hiddenPile = new TableauPile();
 
 		while (initialCardCount-- != 0) {
-			hiddenPile.forceAddCard(dealPile.removeTopCard());
+			hiddenPile.pushTop(dealPile.popTop());
 		}
 		
 		flipOverCard();
@@ -35,9 +35,12 @@ public class Tableau {
 		return hiddenPile;
 	}
 	
-	void flipOverCard() {
+	//returns true if a card was turned over
+	boolean flipOverCard() {
 		if (hiddenPile.getHeight() != 0 && visiblePile.getHeight() == 0) {
-			visiblePile.forceAddCard(hiddenPile.removeTopCard());
+			visiblePile.pushTop(hiddenPile.popTop());
+			return true;
 		}
+		return false;
 	}
 }
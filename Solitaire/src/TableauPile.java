@@ -10,23 +10,23 @@
 public class TableauPile extends Pile {
 
 	@Override
-	protected boolean canAdd(Card newCard) {
+	protected boolean canAdd(byte newCard) {
 		if (getHeight() == 0) {
 			// only kings are allowed to be placed on an empty pile
-			return newCard.rank == Card.RANK_KING;
+			return Card.rankOf(newCard) == Card.RANK_KING;
 			
 		} else {
 			// otherwise ensure that the top card is of a different colour
 			// and has a value one above the new card
-			Card top = getTopCard();
-			return top.isAlternateColour(newCard) && top.isRankedOneAbove(newCard);	
+			byte top = getTopCode();
+			return ((top ^ newCard) & Card.BLACK_BIT) != 0 && Card.rankOf(top) == Card.rankOf(newCard) + 1;	
 		}
 	}
 
 	@Override
 	protected boolean canAdd(Pile p) {
 		// we can add a pile as long as we can add its bottom card
-		return canAdd(p.getBottomCard());
+		return canAdd(p.getBottomCode());
 	}
 	
 	public TableauPile(Pile p, int count) {
@@ -0,0 +1,95 @@
+
+/*
+ *	Solitaire - TranspositionTable.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.util.Arrays;
+
+//a set of position hashes (see Solitaire.getHash) used by the solver to avoid searching
+//the same position twice. it is an open addressed hash table of longs, so no objects
+//are created per position
+public class TranspositionTable {
+	
+	//zero marks an empty slot, so a hash of zero is stored as this instead
+	static final long ZERO_HASH = 1;
+	
+	protected long hashes[];
+	protected int mask;
+	protected int count;
+	protected int initialSize;
+	
+	//capacity is rounded up to a power of two, the table grows as needed
+	public TranspositionTable(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+		hashes = new long[size];
+		mask = size - 1;
+		count = 0;
+		initialSize = size;
+	}
+	
+	//after a big search the table goes back to its first size, as it is cheaper to grow it again
+	//than to clear all of it for lots of small searches (eg. when surveying many deals)
+	public void clear() {
+		if (hashes.length > initialSize) {
+			hashes = new long[initialSize];
+			mask = initialSize - 1;
+		} else {
+			Arrays.fill(hashes, 0);
+		}
+		count = 0;
+	}
+	
+	public int size() {
+		return count;
+	}
+	
+	//mixes the hash so that the low bits used for the index depend on all of the bits
+	protected static int indexOf(long hash) {
+		hash ^= hash >>> 32;
+		hash *= 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32);
+	}
+	
+	//adds a position, returning false if it was already in the table
+	public boolean add(long hash) {
+		if (hash == 0) {
+			hash = ZERO_HASH;
+		}
+		
+		int i = indexOf(hash) & mask;
+		while (hashes[i] != 0) {
+			if (hashes[i] == hash) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		
+		hashes[i] = hash;
+		
+		//keep the table at most half full so the probes stay short
+		if (++count * 2 > hashes.length) {
+			grow();
+		}
+		return true;
+	}
+	
+	protected void grow() {
+		long oldHashes[] = hashes;
+		hashes = new long[oldHashes.length * 2];
+		mask = hashes.length - 1;
+		
+		for (long hash : oldHashes) {
+			if (hash != 0) {
+				int i = indexOf(hash) & mask;
+				while (hashes[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				hashes[i] = hash;
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+
+/*
+ *	Solitaire - UndoJournal.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+//records each move as a few ints so that it can be reversed later, instead of saving
+//a copy of the entire game. the cards themselves are not stored, only where they went,
+//and the scoring and timer variables from before the move (as they are cheap to restore)
+public class UndoJournal {
+
+	//types of move that can be recorded
+	static final int TYPE_MOVE = 0;				//cards held from one pile and released on another (or back where they came from)
+	static final int TYPE_FLIP_HAND = 1;		//cards dealt from the deal pile, or the hand being reset
+	static final int TYPE_FLIP_COLUMN = 2;		//a hidden card in a tableau being turned over
+
+	//layout of the first int of each entry, which describes what the move did
+	static final int TYPE_MASK = 0x3;
+	static final int FROM_SHIFT = 2;			//pile index the cards came from (TYPE_MOVE), or the tableau turned over (TYPE_FLIP_COLUMN)
+	static final int TO_SHIFT = 6;				//pile index the cards ended up on (TYPE_MOVE)
+	static final int COLUMN_MASK = 0xF;
+	static final int COUNT_SHIFT = 10;			//number of cards moved (TYPE_MOVE) or dealt (TYPE_FLIP_HAND)
+	static final int SHOWN_SHIFT = 16;			//number of showing cards put on the discard pile (TYPE_FLIP_HAND)
+	static final int COUNT_MASK = 0x3F;
+	static final int FLAG_REFILLED = 1 << 22;	//a discarded card was made visible as the showing pile was emptied (TYPE_MOVE)
+	static final int FLAG_RESET = 1 << 23;		//the hand was reset (TYPE_FLIP_HAND), or a card was actually turned over (TYPE_FLIP_COLUMN)
+	static final int FLAG_UNTIMED = 1 << 24;	//the timer had not started before this move
+
+	//each entry is stored as this many consecutive ints
+	static final int FIELD_MOVE = 0;
+	static final int FIELD_WIN_SECONDS = 1;
+	static final int FIELD_SCORE = 2;
+	static final int FIELD_PENALTY_TIME = 3;
+	static final int FIELD_RESETS = 4;
+	static final int FIELD_HOLD_ORIGIN = 5;
+	static final int FIELD_UNDOS = 6;
+	static final int STRIDE = 7;
+
+	protected int entries[];		//circular buffer of entries, grown as needed
+	protected int capacity;			//number of entries that fit in the buffer
+	protected int first;			//entry index of the oldest entry
+	protected int size;				//number of entries stored
+	protected int limit;			//maximum number of entries kept, or 0 for no limit
+
+	public UndoJournal(int maxDepth) {
+		limit = maxDepth;
+		capacity = limit != 0 && limit < 64 ? limit : 64;
+		entries = new int[capacity * STRIDE];
+	}
+
+	//copy constructor
+	public UndoJournal(UndoJournal other) {
+		entries = other.entries.clone();
+		capacity = other.capacity;
+		first = other.first;
+		size = other.size;
+		limit = other.limit;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void clear() {
+		first = 0;
+		size = 0;
+	}
+
+	//saves the state of the game before a move, the move itself is filled in afterwards
+	//with one of the set...() methods once it is known what happened
+	void push(Solitaire game) {
+		if (limit != 0 && size == limit) {
+			//forget the oldest move to make room
+			first = (first + 1) % capacity;
+			--size;
+
+		} else if (size == capacity) {
+			grow();
+		}
+
+		int base = ((first + size) % capacity) * STRIDE;
+		++size;
+
+		entries[base + FIELD_MOVE] = game.firstMoveTimestamp == 0 ? FLAG_UNTIMED : 0;
+		entries[base + FIELD_WIN_SECONDS] = game.winSeconds;
+		entries[base + FIELD_SCORE] = game.score;
+		entries[base + FIELD_PENALTY_TIME] = game.previousPenaltyTime;
+		entries[base + FIELD_RESETS] = game.resets;
+		entries[base + FIELD_HOLD_ORIGIN] = game.holdOrigin;
+		entries[base + FIELD_UNDOS] = game.numberOfUndos;
+	}
+
+	protected void grow() {
+		int newCapacity = capacity * 2;
+		if (limit != 0 && newCapacity > limit) {
+			newCapacity = limit;
+		}
+
+		//unwrap the entries so the oldest is at the start of the new buffer
+		int newEntries[] = new int[newCapacity * STRIDE];
+		for (int i = 0; i < size; ++i) {
+			System.arraycopy(entries, ((first + i) % capacity) * STRIDE, newEntries, i * STRIDE, STRIDE);
+		}
+
+		entries = newEntries;
+		capacity = newCapacity;
+		first = 0;
+	}
+
+	//index into entries of the most recent entry
+	protected int topBase() {
+		return ((first + size - 1) % capacity) * STRIDE;
+	}
+
+	void pop() {
+		--size;
+	}
+
+	void setMove(int from, int to, int count, boolean refilled) {
+		int base = topBase();
+		entries[base + FIELD_MOVE] = (entries[base + FIELD_MOVE] & FLAG_UNTIMED) | TYPE_MOVE | (from << FROM_SHIFT) | (to << TO_SHIFT) | (count << COUNT_SHIFT) | (refilled ? FLAG_REFILLED : 0);
+	}
+
+	void setFlipHand(int shown, int dealt, boolean reset) {
+		int base = topBase();
+		entries[base + FIELD_MOVE] = (entries[base + FIELD_MOVE] & FLAG_UNTIMED) | TYPE_FLIP_HAND | (dealt << COUNT_SHIFT) | (shown << SHOWN_SHIFT) | (reset ? FLAG_RESET : 0);
+	}
+
+	void setFlipColumn(int column, boolean flipped) {
+		int base = topBase();
+		entries[base + FIELD_MOVE] = (entries[base + FIELD_MOVE] & FLAG_UNTIMED) | TYPE_FLIP_COLUMN | (column << FROM_SHIFT) | (flipped ? FLAG_RESET : 0);
+	}
+
+	//accessors for the most recent entry
+	int getMove() {
+		return entries[topBase() + FIELD_MOVE];
+	}
+
+	int getField(int field) {
+		return entries[topBase() + field];
+	}
+
+	static int typeOf(int move) {
+		return move & TYPE_MASK;
+	}
+
+	static int fromOf(int move) {
+		return (move >> FROM_SHIFT) & COLUMN_MASK;
+	}
+
+	static int toOf(int move) {
+		return (move >> TO_SHIFT) & COLUMN_MASK;
+	}
+
+	static int countOf(int move) {
+		return (move >> COUNT_SHIFT) & COUNT_MASK;
+	}
+
+	static int shownOf(int move) {
+		return (move >> SHOWN_SHIFT) & COUNT_MASK;
+	}
+}
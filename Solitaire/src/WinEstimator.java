@@ -0,0 +1,408 @@
+
+/*
+ *	Solitaire - WinEstimator.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//estimates how likely a position is to be won, when the cards that haven't been seen yet could be anywhere.
+//the unseen cards (the hidden cards in the tableaus, and the deal pile before the hand has been gone through
+//once) are shuffled back into their places many times over, and each of these deals is played out after
+//every move that can be made now, by a short search (see Solver). the search sometimes misses a win, so the
+//chances are a little low, but they are good for comparing moves. the chance of winning the position is the
+//chance for the best move, as the player has to pick one move without knowing where the cards really are,
+//rather than whichever move wins each deal. the deals are shared out between threads, and each thread plays
+//all of its deals on one copy of the game, with the same search buffers, so playing a deal doesn't create
+//any objects
+public class WinEstimator {
+
+	static final int CHUNK_SAMPLES = 64;				//deals given to a thread at a time
+	static final long DEFAULT_PLAYOUT_NODES = 400;		//positions searched in each play out
+
+	protected ForkJoinPool pool;
+	protected long playoutNodes;
+	protected Worker planner;							//works out the moves to try on the calling thread
+
+	//each thread reuses one Worker for every estimate it helps with
+	protected ThreadLocal<Worker> workers;
+
+	//the position being estimated, which the threads copy but don't change
+	protected Solitaire position;
+	protected int positionVersion;						//changed for each estimate, so workers know to copy it again
+	protected long seed;
+	protected int unseenCount;
+	protected int nextChunk;							//the chunk of deals to play next, which sets their seeds
+	protected volatile boolean stopped;
+
+	//the moves that can be made from the position, and how many deals each of them won
+	protected MoveList moves = new MoveList();
+	protected int moveWins[] = new int[0];
+	protected int samples;								//deals played out
+	protected boolean won;								//the position has already been won
+
+	public WinEstimator(long maxPlayoutNodes, int threads) {
+		playoutNodes = maxPlayoutNodes;
+		pool = createPool(threads);
+		planner = new Worker(this);
+
+		workers = new ThreadLocal<Worker>() {
+			@Override
+			protected Worker initialValue() {
+				return new Worker(WinEstimator.this);
+			}
+		};
+	}
+
+	public WinEstimator(long maxPlayoutNodes) {
+		this(maxPlayoutNodes, Runtime.getRuntime().availableProcessors());
+	}
+
+	protected ForkJoinPool createPool(int threads) {
+		return new ForkJoinPool(threads);
+	}
+
+	public int getThreads() {
+		return pool.getParallelism();
+	}
+
+	//plays out some deals from a position (the game itself is not changed), returning the chance of winning.
+	//the deals are played in whole chunks, so there may be a few more than asked for, and the same seed
+	//always gives the same deals. if stop() is called part way through, the results are for the deals
+	//played so far
+	public double estimate(Solitaire game, int minSamples, long _seed) {
+		position = Solver.copyForSearch(game);
+		++positionVersion;
+		seed = _seed;
+		samples = 0;
+		won = false;
+		nextChunk = 0;
+		unseenCount = countUnseen(position);
+
+		planner.getMoves(position, moves);
+		if (position.isWon()) {
+			moves.clear();
+			samples = 1;
+			won = true;
+		}
+		if (moveWins.length < moves.size()) {
+			moveWins = new int[moves.size()];
+		}
+		for (int i = 0; i < moves.size(); ++i) {
+			moveWins[i] = 0;
+		}
+
+		return estimateMore(minSamples);
+	}
+
+	//plays more deals from the same position as the last estimate, adding them to its results
+	public double estimateMore(int minSamples) {
+		stopped = false;
+		if (isComplete()) {
+			return getWinProbability();
+		}
+
+		//with nothing left to shuffle every deal is the same, so only one is needed
+		int chunkSamples = unseenCount == 0 ? 1 : CHUNK_SAMPLES;
+		int chunks = unseenCount == 0 ? 1 : (minSamples + CHUNK_SAMPLES - 1) / CHUNK_SAMPLES;
+
+		pool.invoke(new SampleTask(this, nextChunk, nextChunk + chunks, chunkSamples));
+		nextChunk += chunks;
+		return getWinProbability();
+	}
+
+	//true if playing more deals wouldn't change the results
+	public boolean isComplete() {
+		return moves.size() == 0 || (unseenCount == 0 && samples != 0);
+	}
+
+	public void stop() {
+		stopped = true;
+	}
+
+	//the number of cards whose places aren't known (see Worker.findUnseen)
+	static int countUnseen(Solitaire game) {
+		int count = game.resets == 0 ? game.dealPile.getHeight() : 0;
+		for (int i = 0; i < 7; ++i) {
+			count += game.tableau[i].hiddenPile.getHeight();
+		}
+		return count;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	//the chance that the best move wins (see getBestMove)
+	public double getWinProbability() {
+		if (won) {
+			return 1;
+		}
+		int best = getBestIndex();
+		return best == -1 ? 0 : getMoveProbability(best);
+	}
+
+	//the moves that were tried, in the order the search would try them
+	public int getMoveCount() {
+		return moves.size();
+	}
+
+	public int getMove(int index) {
+		return moves.get(index);
+	}
+
+	public double getMoveProbability(int index) {
+		return samples == 0 ? 0 : (double) moveWins[index] / samples;
+	}
+
+	//the index of the move that won the most deals, or -1 if there are no moves. ties go to the move the
+	//search would try first
+	protected int getBestIndex() {
+		int best = -1;
+		for (int i = 0; i < moves.size(); ++i) {
+			if (best == -1 || moveWins[i] > moveWins[best]) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	//the move that won the most deals, or -1 if there are no moves
+	public int getBestMove() {
+		int best = getBestIndex();
+		return best == -1 ? -1 : moves.get(best);
+	}
+
+	//adds up the results of some deals played by a worker
+	protected synchronized void addResults(int playedSamples, int playedMoveWins[]) {
+		samples += playedSamples;
+		for (int i = 0; i < moves.size(); ++i) {
+			moveWins[i] += playedMoveWins[i];
+		}
+	}
+
+	//splits a range of chunks of deals in half until there is one chunk left, which is played by whichever
+	//thread picks it up
+	static class SampleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		protected WinEstimator owner;
+		protected int firstChunk;
+		protected int lastChunk;		//one after the last
+		protected int chunkSamples;
+
+		public SampleTask(WinEstimator _owner, int first, int last, int _chunkSamples) {
+			owner = _owner;
+			firstChunk = first;
+			lastChunk = last;
+			chunkSamples = _chunkSamples;
+		}
+
+		@Override
+		protected void compute() {
+			if (lastChunk - firstChunk > 1) {
+				int middle = (firstChunk + lastChunk) >>> 1;
+				invokeAll(new SampleTask(owner, firstChunk, middle, chunkSamples), new SampleTask(owner, middle, lastChunk, chunkSamples));
+				return;
+			}
+
+			owner.workers.get().play(firstChunk, chunkSamples);
+		}
+	}
+
+	//plays out deals on one thread, with a short search from the position after each move
+	static class Worker extends Solver {
+
+		protected WinEstimator owner;
+		protected int copiedVersion;		//the version of the owner's position that game is a copy of
+		protected Random random;
+
+		//the cards that haven't been seen, and the places they go (a pile, and how far down it). each chunk
+		//shuffles them starting from the order they were found in
+		protected byte found[] = new byte[Pile.CAPACITY];
+		protected byte unseen[] = new byte[Pile.CAPACITY];
+		protected Pile unseenPiles[] = new Pile[Pile.CAPACITY];
+		protected int unseenDepths[] = new int[Pile.CAPACITY];
+		protected int unseenCount;
+
+		protected int moveWins[] = new int[0];
+
+		public Worker(WinEstimator _owner) {
+			super(_owner.playoutNodes, 0);
+			owner = _owner;
+			random = new Random();
+			table = new TranspositionTable(1 << 10);
+		}
+
+		//fills a list with the moves worth trying from a position, as plain moves. a move that can't make
+		//things worse is tried on its own (see Solver.isForced), and turning the hand over is always tried,
+		//as it is how the cards further round the hand are reached
+		protected void getMoves(Solitaire position, MoveList moves) {
+			game = position;
+			game.generateMoves(generated);
+			updateFoundationRanks();
+			moves.clear();
+
+			for (int i = 0; i < generated.size(); ++i) {
+				if (isForced(generated.get(i))) {
+					moves.add(generated.get(i));
+					return;
+				}
+			}
+
+			pruning = false;
+			for (int priority = PRIORITY_FOUNDATION; priority < PRIORITY_USELESS; ++priority) {
+				for (int i = 0; i < generated.size(); ++i) {
+					if (getPriority(generated.get(i)) == priority) {
+						moves.add(generated.get(i));
+					}
+				}
+			}
+			for (int i = 0; i < generated.size(); ++i) {
+				if (Move.getType(generated.get(i)) == Move.TYPE_FLIP_HAND) {
+					moves.add(generated.get(i));
+				}
+			}
+		}
+
+		//plays a chunk of deals, each chunk has its own seed so the results don't depend on which thread
+		//played it
+		protected void play(int chunk, int count) {
+			if (copiedVersion != owner.positionVersion || game == null) {
+				game = ParallelSolver.copyForTask(owner.position);
+				copiedVersion = owner.positionVersion;
+				findUnseen();
+			}
+
+			int moveCount = owner.moves.size();
+			if (moveWins.length < moveCount) {
+				moveWins = new int[moveCount];
+			}
+			for (int i = 0; i < moveCount; ++i) {
+				moveWins[i] = 0;
+			}
+
+			random.setSeed(owner.seed + chunk * 0x9E3779B97F4A7C15L);
+			System.arraycopy(found, 0, unseen, 0, unseenCount);
+			int played = 0;
+
+			for (; played < count && !owner.stopped; ++played) {
+				deal();
+
+				for (int i = 0; i < moveCount; ++i) {
+					game.apply(owner.moves.get(i));
+					if (game.isWon() || playOut()) {
+						++moveWins[i];
+					}
+					game.unapply();
+				}
+			}
+
+			owner.addResults(played, moveWins);
+		}
+
+		//finds the cards that haven't been seen. the deal pile has only been seen once the hand has been
+		//reset, as until then its cards have never been turned over
+		protected void findUnseen() {
+			unseenCount = 0;
+			for (int i = 0; i < 7; ++i) {
+				addUnseen(game.tableau[i].hiddenPile);
+			}
+			if (game.resets == 0) {
+				addUnseen(game.dealPile);
+			}
+		}
+
+		protected void addUnseen(Pile pile) {
+			for (int depth = 0; depth < pile.getHeight(); ++depth) {
+				found[unseenCount] = pile.getCode(depth);
+				unseenPiles[unseenCount] = pile;
+				unseenDepths[unseenCount] = depth;
+				++unseenCount;
+			}
+		}
+
+		//shuffles the unseen cards back into their places
+		protected void deal() {
+			for (int i = unseenCount; i > 1; --i) {
+				int j = random.nextInt(i);
+				byte temp = unseen[j];
+				unseen[j] = unseen[i - 1];
+				unseen[i - 1] = temp;
+			}
+
+			for (int i = 0; i < unseenCount; ++i) {
+				Pile pile = unseenPiles[i];
+				pile.cards[(pile.head + unseenDepths[i]) & Pile.INDEX_MASK] = unseen[i];
+			}
+			for (int i = 0; i < 7; ++i) {
+				game.tableau[i].hiddenPile.rehash();
+			}
+			game.dealPile.rehash();
+		}
+
+		//searches for a win from the current position, leaving the game where it was
+		protected boolean playOut() {
+			table.clear();
+			addPosition(getPositionKey());
+			pruning = true;
+			nodes = 0;
+			phaseNodeLimit = nodeLimit;
+			phaseDeadline = Long.MAX_VALUE;
+
+			int moves = game.journal.getSize();
+			if (searchFrom() != Result.Winnable) {
+				return false;
+			}
+
+			//a win leaves the game at the end of the search instead of taking the moves back
+			while (game.journal.getSize() > moves) {
+				game.unapply();
+			}
+			return true;
+		}
+
+		@Override
+		protected boolean outOfBudget() {
+			return owner.stopped || super.outOfBudget();
+		}
+	}
+
+	//estimates the chance of winning a deal from the start, eg. java WinEstimator 12345 draw3 10000
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("usage: WinEstimator <seed> [draw1|draw3] [samples] [max playout nodes] [threads]");
+			return;
+		}
+
+		GameOptions opt = new GameOptions();
+		opt.draw3 = args.length < 2 || !args[1].equals("draw1");
+		opt.useSeed = true;
+		opt.initialSeed = (int) Long.decode(args[0]).longValue();
+
+		int samples = args.length >= 3 ? Integer.parseInt(args[2]) : 10000;
+		long maxNodes = args.length >= 4 ? Long.parseLong(args[3]) : DEFAULT_PLAYOUT_NODES;
+		int threads = args.length >= 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		WinEstimator estimator = new WinEstimator(maxNodes, threads);
+		Solitaire game = new Solitaire(opt);
+
+		//the first estimate warms up the search, so the time is for the second one
+		estimator.estimate(game, samples, 0);
+		long startTime = System.nanoTime();
+		double probability = estimator.estimate(game, samples, 1);
+		long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+		System.out.printf("%.1f%% chance of winning from %d deals in %d ms on %d threads%n", probability * 100, estimator.getSamples(), elapsed, estimator.getThreads());
+		for (int i = 0; i < estimator.getMoveCount(); ++i) {
+			System.out.printf("%5.1f%%: %s%s%n", estimator.getMoveProbability(i) * 100, Move.toString(estimator.getMove(i)),
+					estimator.getMove(i) == estimator.getBestMove() ? " (best)" : "");
+		}
+	}
+}
@@ -0,0 +1,72 @@
+
+/*
+ *	Solitaire - Zobrist.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import java.util.Random;
+
+//random keys for zobrist hashing of game positions (see Solitaire.getHash)
+//every pile gets a slot, and each slot has a key for every card at every position in the pile
+//so the hash of a pile is the xor of the keys of the cards it contains, and can be updated as
+//cards come and go without looking at the rest of the pile
+public final class Zobrist {
+	
+	static final int NOT_HASHED = -1;			//slot for piles that aren't part of the position (eg. the held cards)
+	
+	//the most cards that can ever be in each kind of pile
+	static final int HIDDEN_POSITIONS = 6;		//the last tableau starts with 6 hidden cards, and it can only go down from there
+	static final int VISIBLE_POSITIONS = 13;	//visible cards always go down in rank, so there can't be more than king to ace
+	static final int FOUNDATION_POSITIONS = 13;
+	static final int HAND_POSITIONS = 24;		//the cards not dealt to the tableaus
+	
+	//where the positions for each pile start
+	static final int HIDDEN_SLOT = 0;
+	static final int VISIBLE_SLOT = HIDDEN_SLOT + 7 * HIDDEN_POSITIONS;
+	static final int FOUNDATION_SLOT = VISIBLE_SLOT + 7 * VISIBLE_POSITIONS;
+	static final int DEAL_SLOT = FOUNDATION_SLOT + 4 * FOUNDATION_POSITIONS;
+	static final int SHOWING_SLOT = DEAL_SLOT + HAND_POSITIONS;
+	static final int DISCARD_SLOT = SHOWING_SLOT + HAND_POSITIONS;
+	static final int TOTAL_POSITIONS = DISCARD_SLOT + HAND_POSITIONS;
+	
+	//only matters in Vegas mode, where the number of resets limits flipping the hand
+	static final int MAX_RESETS = 4;
+	
+	private static final long cardKeys[] = new long[TOTAL_POSITIONS * Card.CODE_LIMIT];
+	private static final long resetKeys[] = new long[MAX_RESETS];
+	private static final long dealtKeys[] = new long[HAND_POSITIONS + 1];
+	
+	static {
+		//always the same seed so that hashes can be compared between runs
+		Random random = new Random(0x5017A17EL);
+		for (int i = 0; i < cardKeys.length; ++i) {
+			cardKeys[i] = random.nextLong();
+		}
+		for (int i = 0; i < resetKeys.length; ++i) {
+			resetKeys[i] = random.nextLong();
+		}
+		for (int i = 0; i < dealtKeys.length; ++i) {
+			dealtKeys[i] = random.nextLong();
+		}
+	}
+	
+	private Zobrist() {
+		
+	}
+	
+	public static long cardKey(int slot, int position, byte card) {
+		return cardKeys[(slot + position) * Card.CODE_LIMIT + card];
+	}
+	
+	public static long resetKey(int resets) {
+		return resetKeys[resets < MAX_RESETS ? resets : MAX_RESETS - 1];
+	}
+	
+	//key for how many cards of the hand have been dealt (see Solver.getPositionKey)
+	public static long dealtKey(int dealt) {
+		return dealtKeys[dealt];
+	}
+}
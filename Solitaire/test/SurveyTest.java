@@ -0,0 +1,55 @@
+
+/*
+ *	Solitaire - SurveyTest.java
+ * 
+ * 	Copyright Alex Boxall 2021-2022
+ * 	See LICENSE for licensing details.
+ * 
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SurveyTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//runs a quick survey, and checks every seed in the range was written once, in order
+	protected void checkSurvey(long first, long end, int threads) throws IOException, InterruptedException {
+		File file = new File(folder.getRoot(), "survey.csv");
+		new Survey(first, end, new GameOptions(), 200, 0, threads, file).run();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+		assertEquals(Survey.HEADER.trim(), lines.get(0));
+		assertEquals(end - first, lines.size() - 1);
+		for (int i = 1; i < lines.size(); ++i) {
+			assertEquals(first + i - 1, Long.parseLong(lines.get(i).split(",")[0]));
+		}
+	}
+
+	//-1 is a seed like any other, and mustn't look like the end of the survey
+	@Test
+	public void rangeStartingAtMinusOne() throws Exception {
+		checkSurvey(-1, 5, 1);
+	}
+
+	@Test
+	public void blockStartingAtMinusOne() throws Exception {
+		checkSurvey(-1 - Survey.BLOCK_SIZE, 5, 2);
+	}
+
+	@Test
+	public void rangeEndingAtLastSeed() throws Exception {
+		checkSurvey(Integer.MAX_VALUE - 300L, Integer.MAX_VALUE + 1L, 2);
+	}
+}